@@ -1,52 +1,513 @@
 package ascii_art;
 
+import ascii_art.exceptions.RenderCancelledException;
 import image.*;
-import image_char_matching.SubImgCharMatcher;
+import image_char_matching.BrailleTable;
+import image_char_matching.CharMatcherSnapshot;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * this class runs the ascii art algorithm on some image, resolution, with type of round.
  */
 public class AsciiArtAlgorithm {
+    private static final int MAX_RGB = 255;
+    private static final int MIN_BAND_PIXEL_ROWS = 16;
+
     private final Image originalImage;
     private final int resolution;
-    private final SubImgCharMatcher subImgCharMatcher;
-    private String round;
+    private final CharMatcherSnapshot charMatcher;
+    private final RenderStats stats;
+    private double exactAspectRatio;
+    private UniformityIndex uniformityIndex;
+    private BrightnessPyramid brightnessPyramid;
+    private double brailleThreshold;
+    private DitherMode dither;
+    private double[][] brightness;
+    private boolean derivedBrightness;
+    private RenderMonitor monitor;
 
 
     /**
      * constructor for the class that set the values.
      * @param image the image we want to run the algorithm on.
      * @param resolution the wanted resolution.
-     * @param charset the set of chars.
-     * @param round the wanted ran method.
+     * @param charset the snapshot of the set of chars and the wanted round method. The snapshot is
+     *                immutable, so the charset stays consistent during the whole run.
      */
-    public AsciiArtAlgorithm(Image image, int resolution, SubImgCharMatcher charset, String round){
+    public AsciiArtAlgorithm(Image image, int resolution, CharMatcherSnapshot charset){
             this.originalImage = image;
             this.resolution = resolution;
-            this.subImgCharMatcher = charset;
-            this.round = round;
+            this.charMatcher = charset;
+            this.stats = new RenderStats();
+            this.exactAspectRatio = 0;
+            this.uniformityIndex = null;
+            this.brightnessPyramid = null;
+            this.brailleThreshold = Double.NaN;
+            this.dither = null;
+            this.brightness = null;
+            this.derivedBrightness = false;
+            this.monitor = new RenderMonitor();
         }
 
+    /**
+     * Switch the algorithm to an exact grid: the image is not padded, the resolution may be any number of
+     * columns, and the brightness of every cell is averaged over the exact area it covers.
+     * @param aspectRatio the height of a cell divided by its width, 1 for square cells.
+     */
+    public void setExactGrid(double aspectRatio) {
+        this.exactAspectRatio = aspectRatio;
+    }
+
+    /**
+     * Set the uniformity index of the padded image, so uniform tiles take their brightness from a single
+     * pixel instead of summing all of them.
+     * @param uniformityIndex the index built over the same image the algorithm runs on.
+     */
+    public void setUniformityIndex(UniformityIndex uniformityIndex) {
+        this.uniformityIndex = uniformityIndex;
+    }
+
+    /**
+     * Set the brightness pyramid of the padded image, so a tile size already computed, or coarser than one
+     * already computed, is taken from the pyramid instead of the pixels, and the tile sizes computed from
+     * the pixels are added to it. The chars are those of a run from the pixels either way; dithered runs,
+     * where the brightness of every cell moves its neighbours, always run from the pixels.
+     * @param brightnessPyramid the pyramid kept with the same image the algorithm runs on.
+     */
+    public void setBrightnessPyramid(BrightnessPyramid brightnessPyramid) {
+        this.brightnessPyramid = brightnessPyramid;
+    }
+
+    /**
+     * Switch the algorithm to braille output: every cell is split into 2 columns and 4 rows of sub tiles,
+     * computed by the same brightness code at twice the resolution, and every sub tile darker than the
+     * threshold raises its dot, so the dots are the ink on a light ground like the chars of the charset.
+     * The charset is not used.
+     * @param threshold the brightness below which a dot is raised, between 0 and 1.
+     */
+    public void setBraille(double threshold) {
+        this.brailleThreshold = threshold;
+    }
+
+    /**
+     * Switch the algorithm to error diffusion: the error between the brightness of every cell and the
+     * brightness of its char is carried to the cells after it. Braille cells are not dithered.
+     * @param dither the kernel, or null to match every cell alone.
+     */
+    public void setDither(DitherMode dither) {
+        this.dither = dither;
+    }
+
+    /**
+     * Set the monitor of the run, which may cancel it or give it a deadline.
+     * @param monitor the monitor.
+     */
+    public void setMonitor(RenderMonitor monitor) {
+        this.monitor = monitor;
+    }
+
     /**
      * This function runs the algorithm to create the ascii art. find the closet char to the brightness of
      * the image.
+     * @return the ascii art. If the deadline of the monitor passed, either only the finished rows or every
+     * row with the unfinished cells sampled from a single pixel.
+     * @throws RenderCancelledException if the monitor cancelled the run.
+     */
+    public char[][] run() throws RenderCancelledException {
+        long start = System.nanoTime();
+        brightness = calculateBrightness(getBrightnessResolution());
+        char[][] asciiArt = matchBrightness();
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return asciiArt;
+    }
+
+    /**
+     * This function runs the algorithm again after some rectangles of the image changed. Only the tiles
+     * over the changed rectangles are computed, the brightness of the others is taken from the previous
+     * run. The exact grid has no tiles, so it is computed again in full.
+     * @param previousBrightness the brightness of a previous run with the same grid, as returned by
+     *                           {@link #getBrightness()}. It is not changed.
+     * @param changed the changed rectangles, in pixels of the image the algorithm runs on.
      * @return the ascii art.
+     * @throws RenderCancelledException if the monitor cancelled the run.
      */
-    public char[][] run() {
-        SubImages subImages = new SubImages(resolution, originalImage);
-        subImages.setSubImage();
-        Image[][] subImageArray = subImages.getSubImages();
+    public char[][] runChanged(double[][] previousBrightness, List<Rectangle> changed)
+            throws RenderCancelledException {
+        long start = System.nanoTime();
+        int resolution = getBrightnessResolution();
+        if (exactAspectRatio > 0 || previousBrightness.length == 0
+                || previousBrightness[0].length != resolution) {
+            brightness = calculateBrightness(resolution);
+        } else {
+            brightness = calculateBrightness(resolution, previousBrightness, changed);
+        }
+        char[][] asciiArt = matchBrightness();
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return asciiArt;
+    }
+
+    /**
+     * Returns the brightness of the cells of the last run, or of the sub tiles in braille mode.
+     * @return the brightness, or null before the first run and after a run that took cells from the
+     * brightness pyramid, whose brightness is only known up to the last bits.
+     */
+    public double[][] getBrightness() {
+        return derivedBrightness ? null : brightness;
+    }
+
+    /**
+     * This function returns the number of cells in a row of the brightness grid: the resolution, or twice
+     * the resolution in braille mode since every cell has two columns of dots.
+     * @return the number of cells in a row.
+     */
+    private int getBrightnessResolution() {
+        return Double.isNaN(brailleThreshold) ? resolution : resolution * BrailleTable.CELL_COLS;
+    }
+
+    /**
+     * This function turns the brightness of the last run into chars of the charset or braille cells.
+     * @return the ascii art.
+     */
+    private char[][] matchBrightness() {
+        if (!Double.isNaN(brailleThreshold)) {
+            return packBraille(brightness, brailleThreshold);
+        }
+        if (dither != null) {
+            return ditherChars(brightness, charMatcher, dither, stats);
+        }
+        return matchChars(brightness, charMatcher, stats);
+    }
+
+    /**
+     * Returns the counters of the last run.
+     * @return the stats.
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
 
-        int rows = subImageArray.length;
-        int cols = subImageArray[0].length;
+    /**
+     * This function finds the char of every cell. Repeated brightness values are answered by the quantised
+     * table of the charset, and only the rest go through a full scan of the charset.
+     * @param brightness the brightness of the cells.
+     * @param charMatcher the snapshot of the charset.
+     * @param stats the counters to update.
+     * @return the chars of the cells.
+     */
+    static char[][] matchChars(double[][] brightness, CharMatcherSnapshot charMatcher, RenderStats stats) {
+        int rows = brightness.length;
+        int cols = brightness[0].length;
         char[][] asciiArt = new char[rows][cols];
 
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < cols; j++) {
-                double brightness = subImages.calculateBrightnessImage(subImageArray[i][j]);
-                asciiArt[i][j] = subImgCharMatcher.getCharByImageBrightness(brightness);
+                asciiArt[i][j] = matchChar(brightness[i][j], charMatcher, stats);
             }
         }
         return asciiArt;
     }
+
+    /**
+     * This function finds the char of a brightness, from the quantised table of the charset if it has an
+     * answer and by a full scan of the charset otherwise.
+     * @param brightness the brightness.
+     * @param charMatcher the snapshot of the charset.
+     * @param stats the counters to update.
+     * @return the char.
+     */
+    static char matchChar(double brightness, CharMatcherSnapshot charMatcher, RenderStats stats) {
+        char c = charMatcher.getCharByQuantisedBrightness(brightness);
+        if (c != CharMatcherSnapshot.NO_CHAR) {
+            stats.countMemoisedChar();
+        } else {
+            c = charMatcher.getCharByImageBrightness(brightness);
+            stats.countMatcherScan();
+        }
+        return c;
+    }
+
+    /**
+     * This function finds the char of every cell with error diffusion, in one pass over the rows.
+     * @param brightness the brightness of the cells.
+     * @param charMatcher the snapshot of the charset.
+     * @param dither the kernel.
+     * @param stats the counters to update.
+     * @return the chars of the cells.
+     */
+    static char[][] ditherChars(double[][] brightness, CharMatcherSnapshot charMatcher, DitherMode dither,
+                                RenderStats stats) {
+        Ditherer ditherer = new Ditherer(dither, charMatcher, brightness[0].length, stats);
+        char[][] asciiArt = new char[brightness.length][];
+        for (int i = 0; i < brightness.length; i++) {
+            asciiArt[i] = ditherer.ditherRow(brightness[i]);
+        }
+        return asciiArt;
+    }
+
+    /**
+     * This function packs every 2 by 4 block of sub tiles into a braille character. A sub tile darker
+     * than the threshold raises its dot. Sub tiles below the last full row of blocks count as light.
+     * @param brightness the brightness of the sub tiles.
+     * @param threshold the brightness below which a dot is raised.
+     * @return the braille characters.
+     */
+    static char[][] packBraille(double[][] brightness, double threshold) {
+        int rows = (brightness.length + BrailleTable.CELL_ROWS - 1) / BrailleTable.CELL_ROWS;
+        int cols = brightness[0].length / BrailleTable.CELL_COLS;
+        char[][] braille = new char[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int mask = 0;
+                for (int dotRow = 0; dotRow < BrailleTable.CELL_ROWS; dotRow++) {
+                    int row = i * BrailleTable.CELL_ROWS + dotRow;
+                    if (row >= brightness.length) {
+                        break;
+                    }
+                    for (int dotCol = 0; dotCol < BrailleTable.CELL_COLS; dotCol++) {
+                        if (brightness[row][j * BrailleTable.CELL_COLS + dotCol] < threshold) {
+                            mask |= 1 << (dotRow * BrailleTable.CELL_COLS + dotCol);
+                        }
+                    }
+                }
+                braille[i][j] = BrailleTable.getChar(mask);
+            }
+        }
+        return braille;
+    }
+
+    /**
+     * This function calculates the brightness of every cell, either from the square sub images of the
+     * padded image or from the exact grid.
+     * @param resolution the number of cells in a row.
+     * @return the brightness of the cells.
+     * @throws RenderCancelledException if the monitor cancelled the run.
+     */
+    private double[][] calculateBrightness(int resolution) throws RenderCancelledException {
+        if (exactAspectRatio > 0) {
+            ExactGrid grid = new ExactGrid(originalImage, resolution, exactAspectRatio);
+            double[][] brightness = new double[grid.getRows()][];
+            // bands of a few pixel rows, so the rows read by two bands stay few
+            int bandRows = Math.max(1, (int) Math.ceil(MIN_BAND_PIXEL_ROWS / grid.getCellHeight()));
+            monitor.start(grid.getRows());
+            for (int row = 0; row < grid.getRows(); row += bandRows) {
+                int endRow = Math.min(grid.getRows(), row + bandRows);
+                double[][] band = grid.calculateBrightness(row, endRow);
+                System.arraycopy(band, 0, brightness, row, band.length);
+                stats.countTiles(band.length * grid.getCols());
+                if (!monitor.advance(band.length)) {
+                    return finishEarly(brightness, endRow, grid, 0);
+                }
+            }
+            return brightness;
+        }
+        int subImageSize = originalImage.getWidth() / resolution;
+        if (brightnessPyramid != null && dither == null) {
+            long[][] known = brightnessPyramid.getGreyUnits(subImageSize);
+            if (known != null) {
+                return deriveBrightness(known, resolution, subImageSize);
+            }
+        }
+        SubImages subImages = new SubImages(resolution, originalImage);
+        subImages.setSubImage();
+        Image[][] subImageArray = subImages.getSubImages();
+
+        double[][] brightness = new double[subImageArray.length][subImageArray[0].length];
+        // the exact sums are kept only for a grid the pyramid stores
+        long[][] greyUnits = brightnessPyramid != null
+                && brightnessPyramid.accepts(brightness.length, brightness[0].length)
+                ? new long[brightness.length][brightness[0].length] : null;
+        monitor.start(brightness.length);
+        for (int i = 0; i < brightness.length; i++) {
+            for (int j = 0; j < brightness[i].length; j++) {
+                int row = i * subImageSize;
+                int col = j * subImageSize;
+                brightness[i][j] = calculateTileBrightness(subImages, subImageArray[i][j], row, col,
+                        subImageSize);
+                if (greyUnits != null) {
+                    greyUnits[i][j] = calculateTileGreyUnits(subImageArray[i][j], row, col, subImageSize);
+                }
+            }
+            if (!monitor.advance(1)) {
+                return finishEarly(brightness, i + 1, null, subImageSize);
+            }
+        }
+        if (greyUnits != null) {
+            brightnessPyramid.putGreyUnits(subImageSize, greyUnits);
+        }
+        return brightness;
+    }
+
+    /**
+     * This function ends a run stopped by the monitor. A cancelled run throws; a run past its deadline
+     * keeps its finished rows and, for the coarse fallback, samples every other cell from its center pixel.
+     * @param brightness the brightness of the cells, the finished rows filled.
+     * @param finishedRows the number of finished rows.
+     * @param grid the exact grid, or null for the tiles of the padded image.
+     * @param subImageSize the size of the tiles of the padded image.
+     * @return the brightness to turn into chars.
+     * @throws RenderCancelledException if the run was cancelled.
+     */
+    private double[][] finishEarly(double[][] brightness, int finishedRows, ExactGrid grid, int subImageSize)
+            throws RenderCancelledException {
+        if (monitor.isCancelled()) {
+            throw new RenderCancelledException();
+        }
+        if (finishedRows == brightness.length) {
+            return brightness;
+        }
+        if (!monitor.isCoarseFallback()) {
+            return Arrays.copyOf(brightness, finishedRows);
+        }
+        int cols = brightness[0].length;
+        for (int i = finishedRows; i < brightness.length; i++) {
+            brightness[i] = new double[cols];
+            for (int j = 0; j < cols; j++) {
+                if (grid != null) {
+                    brightness[i][j] = grid.sampleBrightness(i, j);
+                } else {
+                    brightness[i][j] = originalImage.getGrey(i * subImageSize + subImageSize / 2,
+                            j * subImageSize + subImageSize / 2) / MAX_RGB;
+                }
+                stats.countSampledTile();
+            }
+        }
+        return brightness;
+    }
+
+    /**
+     * This function calculates the brightness of the tiles of the padded image over some rectangles, and
+     * takes the brightness of the other tiles from a previous run. The grid is not stored in the brightness
+     * pyramid, which has no exact sums of the other tiles.
+     * @param resolution the number of cells in a row.
+     * @param previousBrightness the brightness of the previous run, with the same number of cells.
+     * @param changed the rectangles, in pixels of the padded image.
+     * @return the brightness of the cells.
+     */
+    private double[][] calculateBrightness(int resolution, double[][] previousBrightness,
+                                           List<Rectangle> changed) {
+        SubImages subImages = new SubImages(resolution, originalImage);
+        int subImageSize = originalImage.getWidth() / resolution;
+        double[][] brightness = new double[previousBrightness.length][];
+        boolean[][] computed = new boolean[previousBrightness.length][resolution];
+        for (int i = 0; i < brightness.length; i++) {
+            brightness[i] = previousBrightness[i].clone();
+        }
+        for (Rectangle rectangle : changed) {
+            if (rectangle.isEmpty()) {
+                continue;
+            }
+            int firstRow = Math.max(0, rectangle.y / subImageSize);
+            int endRow = Math.min(brightness.length, (rectangle.y + rectangle.height - 1) / subImageSize + 1);
+            int firstCol = Math.max(0, rectangle.x / subImageSize);
+            int endCol = Math.min(resolution, (rectangle.x + rectangle.width - 1) / subImageSize + 1);
+            for (int i = firstRow; i < endRow; i++) {
+                for (int j = firstCol; j < endCol; j++) {
+                    if (computed[i][j]) {
+                        continue;
+                    }
+                    int row = i * subImageSize;
+                    int col = j * subImageSize;
+                    Image tile = originalImage.crop(row, col, subImageSize, subImageSize);
+                    brightness[i][j] = calculateTileBrightness(subImages, tile, row, col, subImageSize);
+                    computed[i][j] = true;
+                }
+            }
+        }
+        return brightness;
+    }
+
+    /**
+     * This function calculates the brightness of the cells from the grey sums of the brightness pyramid.
+     * A sum gives the brightness of its tile only up to the last bits, since the pixels of a tile are
+     * summed in doubles that round; a cell whose char could depend on those bits is computed from its
+     * pixels, so the chars are the same as those of a run from the pixels.
+     * @param greyUnits the sum of the grey units of every tile.
+     * @param resolution the number of cells in a row.
+     * @param subImageSize the size of the tiles in pixels.
+     * @return the brightness of the cells.
+     */
+    private double[][] deriveBrightness(long[][] greyUnits, int resolution, int subImageSize) {
+        SubImages subImages = new SubImages(resolution, originalImage);
+        long tilePixels = (long) subImageSize * subImageSize;
+        double error = SubImages.brightnessError(tilePixels);
+        double[][] brightness = new double[greyUnits.length][greyUnits[0].length];
+        int derived = 0;
+        for (int i = 0; i < brightness.length; i++) {
+            for (int j = 0; j < brightness[i].length; j++) {
+                double value = SubImages.toBrightness(greyUnits[i][j], tilePixels);
+                if (matchesAlike(value - error, value + error)) {
+                    brightness[i][j] = value;
+                    derived++;
+                } else {
+                    int row = i * subImageSize;
+                    int col = j * subImageSize;
+                    Image tile = originalImage.crop(row, col, subImageSize, subImageSize);
+                    brightness[i][j] = calculateTileBrightness(subImages, tile, row, col, subImageSize);
+                }
+            }
+        }
+        stats.countDerivedTiles(derived);
+        derivedBrightness = true;
+        return brightness;
+    }
+
+    /**
+     * This function checks that every brightness between two values gives the same char, or the same dot
+     * in braille mode. Every rounding method matches brightness values between 0 and 1 in the order of the
+     * brightness of the chars, so the two ends decide for the whole range.
+     * @param low the lower end of the range.
+     * @param high the upper end of the range.
+     * @return true if the whole range gives the same char.
+     */
+    private boolean matchesAlike(double low, double high) {
+        if (!Double.isNaN(brailleThreshold)) {
+            return (low < brailleThreshold) == (high < brailleThreshold);
+        }
+        if (low < 0 || high > 1) {
+            return false;
+        }
+        char c = charMatcher.getCharByQuantisedBrightness(low);
+        if (c != CharMatcherSnapshot.NO_CHAR && c == charMatcher.getCharByQuantisedBrightness(high)) {
+            return true;
+        }
+        return charMatcher.getCharByImageBrightness(low) == charMatcher.getCharByImageBrightness(high);
+    }
+
+    /**
+     * This function calculates the brightness of a tile of the padded image, from a single pixel if the
+     * uniformity index knows the tile is uniform.
+     * @param subImages the sub images of the padded image.
+     * @param tile the tile.
+     * @param row the row of the top left pixel of the tile.
+     * @param col the column of the top left pixel of the tile.
+     * @param size the size of the tile in pixels.
+     * @return the brightness of the tile.
+     */
+    private double calculateTileBrightness(SubImages subImages, Image tile, int row, int col, int size) {
+        if (uniformityIndex != null && uniformityIndex.isUniform(row, col, size)) {
+            stats.countUniformTile();
+            return uniformityIndex.getUniformGrey(row, col) / MAX_RGB;
+        }
+        stats.countTile();
+        return subImages.calculateBrightnessImage(tile);
+    }
+
+    /**
+     * This function sums the grey units of a tile of the padded image, from a single pixel if the
+     * uniformity index knows the tile is uniform. The sum is exact either way.
+     * @param tile the tile.
+     * @param row the row of the top left pixel of the tile.
+     * @param col the column of the top left pixel of the tile.
+     * @param size the size of the tile in pixels.
+     * @return the sum of the grey units of the tile.
+     */
+    private long calculateTileGreyUnits(Image tile, int row, int col, int size) {
+        if (uniformityIndex != null && uniformityIndex.isUniform(row, col, size)) {
+            return (long) originalImage.getGreyUnits(row, col) * size * size;
+        }
+        return SubImages.sumGreyUnits(tile);
+    }
 }
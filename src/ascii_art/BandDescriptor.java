@@ -0,0 +1,143 @@
+package ascii_art;
+
+import java.awt.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A band of rows of the padded image, as sent to a worker process: everything the worker needs to render
+ * the band without the rest of the image. The band is as wide as the padded image; the source rectangle is
+ * the part of the image file inside the band, and the rest of the band is padding. A dithered band starts
+ * a few rows above its first row, to seed the error diffusion, and those rows are dropped.
+ */
+class BandDescriptor {
+    private final String filename;
+    private final Rectangle source;
+    private final int offsetX;
+    private final int offsetY;
+    private final int width;
+    private final int height;
+    private final int resolution;
+    private final String round;
+    private final String charset;
+    private final String dither;
+    private final int skipRows;
+
+    /**
+     * Constructor for the descriptor.
+     * @param filename the image file.
+     * @param source the rectangle of the image file inside the band, in pixels of the image, may be empty.
+     * @param offsetX the column of the band where the source rectangle starts.
+     * @param offsetY the row of the band where the source rectangle starts.
+     * @param width the width of the band, the width of the padded image.
+     * @param height the height of the band.
+     * @param resolution the number of cells in a row.
+     * @param round the name of the rounding method.
+     * @param charset the chars of the charset.
+     * @param dither the name of the dithering kernel, or an empty string for none.
+     * @param skipRows the number of rows of cells at the top of the band that only seed the dithering.
+     */
+    BandDescriptor(String filename, Rectangle source, int offsetX, int offsetY, int width, int height,
+                   int resolution, String round, String charset, String dither, int skipRows) {
+        this.filename = filename;
+        this.source = source;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.width = width;
+        this.height = height;
+        this.resolution = resolution;
+        this.round = round;
+        this.charset = charset;
+        this.dither = dither;
+        this.skipRows = skipRows;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    Rectangle getSource() {
+        return source;
+    }
+
+    int getOffsetX() {
+        return offsetX;
+    }
+
+    int getOffsetY() {
+        return offsetY;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getResolution() {
+        return resolution;
+    }
+
+    String getRound() {
+        return round;
+    }
+
+    String getCharset() {
+        return charset;
+    }
+
+    String getDither() {
+        return dither;
+    }
+
+    int getSkipRows() {
+        return skipRows;
+    }
+
+    /**
+     * Writes the descriptor to a worker.
+     * @param out the input stream of the worker.
+     * @throws IOException if the worker could not be written to.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(filename);
+        out.writeInt(source.x);
+        out.writeInt(source.y);
+        out.writeInt(source.width);
+        out.writeInt(source.height);
+        out.writeInt(offsetX);
+        out.writeInt(offsetY);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(resolution);
+        out.writeUTF(round);
+        out.writeUTF(charset);
+        out.writeUTF(dither);
+        out.writeInt(skipRows);
+    }
+
+    /**
+     * Reads a descriptor written by {@link #write(DataOutputStream)}.
+     * @param in the stream to read from.
+     * @return the descriptor.
+     * @throws IOException if the stream ended or is not a descriptor.
+     */
+    static BandDescriptor read(DataInputStream in) throws IOException {
+        String filename = in.readUTF();
+        Rectangle source = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        int offsetX = in.readInt();
+        int offsetY = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        int resolution = in.readInt();
+        String round = in.readUTF();
+        String charset = in.readUTF();
+        String dither = in.readUTF();
+        int skipRows = in.readInt();
+        return new BandDescriptor(filename, source, offsetX, offsetY, width, height, resolution, round,
+                charset, dither, skipRows);
+    }
+}
@@ -0,0 +1,70 @@
+package ascii_art;
+
+/**
+ * The error diffusion kernels of the dithering mode. Every kernel spreads the difference between the
+ * brightness of a cell and the brightness of its char to cells not matched yet: to the right on the same
+ * row and to the rows below.
+ */
+public enum DitherMode {
+    /** Floyd-Steinberg: the whole error, to the next cell and the three cells below. */
+    FLOYD_STEINBERG("fs", new int[][]{{0, 1}, {1, -1}, {1, 0}, {1, 1}},
+            new double[]{7.0 / 16, 3.0 / 16, 5.0 / 16, 1.0 / 16}),
+    /** Atkinson: three quarters of the error, in eighths, up to two cells right and two rows down. */
+    ATKINSON("atkinson", new int[][]{{0, 1}, {0, 2}, {1, -1}, {1, 0}, {1, 1}, {2, 0}},
+            new double[]{1.0 / 8, 1.0 / 8, 1.0 / 8, 1.0 / 8, 1.0 / 8, 1.0 / 8});
+
+    private final String name;
+    private final int[][] offsets;
+    private final double[] weights;
+
+    /**
+     * Constructor for a kernel.
+     * @param name the name of the kernel in the shell.
+     * @param offsets the row and column offset of every cell that receives error.
+     * @param weights the part of the error every cell receives.
+     */
+    DitherMode(String name, int[][] offsets, double[] weights) {
+        this.name = name;
+        this.offsets = offsets;
+        this.weights = weights;
+    }
+
+    /**
+     * This function parses a dithering kernel as typed in the shell.
+     * @param name the name of the kernel (fs or atkinson), case insensitive.
+     * @return the matching kernel, or null if the name is not valid.
+     */
+    public static DitherMode fromName(String name) {
+        for (DitherMode mode : values()) {
+            if (mode.name.equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of rows below the current one that receive error.
+     * @return the number of rows.
+     */
+    int getRowsAhead() {
+        int rows = 0;
+        for (int[] offset : offsets) {
+            rows = Math.max(rows, offset[0]);
+        }
+        return rows;
+    }
+
+    int[][] getOffsets() {
+        return offsets;
+    }
+
+    double[] getWeights() {
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
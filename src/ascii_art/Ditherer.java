@@ -0,0 +1,68 @@
+package ascii_art;
+
+import image_char_matching.CharMatcherSnapshot;
+
+import java.util.Arrays;
+
+/**
+ * Matches rows of brightness to chars with error diffusion, in a single pass from the top row down. The
+ * difference between the brightness of a cell and the brightness of its char is spread to the cells not
+ * matched yet, so areas between two chars of the charset come out as a mix of both instead of a band of
+ * one. Only the error of the current row and of the rows the kernel reaches is kept: two rows for
+ * Floyd-Steinberg, three for Atkinson, whatever the height of the image. The pass starts without error, so a
+ * band rendered apart from the rows above it is seeded by dithering a few of those rows first.
+ */
+public class Ditherer {
+    // the kernels reach at most two cells to the left or right of the current one
+    private static final int MARGIN = 2;
+
+    private final DitherMode mode;
+    private final CharMatcherSnapshot charMatcher;
+    private final RenderStats stats;
+    private final int cols;
+    private final double[][] errors;
+
+    /**
+     * Constructor for the ditherer, starting without error.
+     * @param mode the kernel.
+     * @param charMatcher the snapshot of the charset.
+     * @param cols the number of cells in a row.
+     * @param stats the counters to update.
+     */
+    Ditherer(DitherMode mode, CharMatcherSnapshot charMatcher, int cols, RenderStats stats) {
+        this.mode = mode;
+        this.charMatcher = charMatcher;
+        this.stats = stats;
+        this.cols = cols;
+        this.errors = new double[mode.getRowsAhead() + 1][cols + 2 * MARGIN];
+    }
+
+    /**
+     * This function matches the next row of cells to chars, adding the error spread to every cell from
+     * the cells before it, and spreading the error of every cell further.
+     * @param brightness the brightness of the cells of the row.
+     * @return the chars of the row.
+     */
+    char[] ditherRow(double[] brightness) {
+        int[][] offsets = mode.getOffsets();
+        double[] weights = mode.getWeights();
+        double[] current = errors[0];
+        char[] row = new char[cols];
+        for (int j = 0; j < cols; j++) {
+            double wanted = brightness[j] + current[j + MARGIN];
+            char c = AsciiArtAlgorithm.matchChar(Math.max(0, Math.min(1, wanted)), charMatcher, stats);
+            double error = wanted - charMatcher.getCharBrightness(c);
+            for (int k = 0; k < offsets.length; k++) {
+                errors[offsets[k][0]][j + offsets[k][1] + MARGIN] += error * weights[k];
+            }
+            row[j] = c;
+        }
+        // the current row is done, the rows below move up and a clear row enters at the bottom
+        for (int i = 1; i < errors.length; i++) {
+            errors[i - 1] = errors[i];
+        }
+        Arrays.fill(current, 0);
+        errors[errors.length - 1] = current;
+        return row;
+    }
+}
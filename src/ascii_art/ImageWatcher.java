@@ -0,0 +1,119 @@
+package ascii_art;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches an image file on a background thread and calls back once the file stops changing. Editors
+ * usually write a file in several steps, so the events are debounced: the callback runs only after no
+ * event arrived for the debounce delay.
+ */
+public class ImageWatcher {
+    private final Path file;
+    private final long debounceMillis;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Constructor for the watcher. Does not start watching.
+     * @param filename the image file.
+     * @param debounceMillis the time without events after which the file counts as changed.
+     * @param onChange called on the watcher thread after every change.
+     */
+    public ImageWatcher(String filename, long debounceMillis, Runnable onChange) {
+        this.file = Path.of(filename).toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts watching the directory of the file on a daemon thread.
+     * @throws IOException if the directory could not be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, "image-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching, and waits for a callback in progress to return.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+            thread.join();
+        } catch (IOException e) {
+            // the service is closed anyway
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        watchService = null;
+    }
+
+    /**
+     * Checks whether the watcher is running.
+     * @return true if the file is watched.
+     */
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * The loop of the watcher thread: waits for an event on the file, then for the events to stop, then
+     * calls back. Ends when the watch service is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                if (!drain(watchService.take())) {
+                    continue;
+                }
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+                onChange.run();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes the events of a key and resets it.
+     * @param key the key.
+     * @return true if one of the events is about the watched file.
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,328 @@
+package ascii_art;
+
+import ascii_art.exceptions.RenderCancelledException;
+import image.ImageSource;
+import image_char_matching.CharMatcherSnapshot;
+import image_char_matching.GlyphTable;
+
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders the padded grid of an image in worker processes, so a huge image never has to fit in the heap of
+ * one JVM. The grid is split into bands of rows, every band is sent to a worker as a {@link BandDescriptor}
+ * over the standard input of the worker, and the rows the workers write back are stitched in order. A
+ * worker that fails or dies is replaced by a new process and its band is sent again. The workers are
+ * started on the first render and kept for the next ones, until the coordinator is closed.
+ */
+public class RenderCoordinator implements Closeable {
+    private static final int BANDS_PER_WORKER = 2;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long POLL_MILLIS = 100;
+    private static final int DITHER_SEED_ROWS = 8;
+
+    private final WorkerProcess[] workers;
+    private AtomicBoolean stopped;
+
+    /**
+     * Constructor for the coordinator. Does not start the workers.
+     * @param workers the number of worker processes.
+     */
+    public RenderCoordinator(int workers) {
+        this.workers = new WorkerProcess[workers];
+        this.stopped = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the number of worker processes.
+     * @return the number of workers.
+     */
+    public int getWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * This function renders the padded grid of an image in the worker processes.
+     * @param source the image.
+     * @param resolution the number of cells in a row.
+     * @param charset the snapshot of the set of chars and the wanted round method.
+     * @param dither the dithering kernel, or null for none. Every band is dithered apart, seeded by a few
+     *               rows above it.
+     * @param monitor the monitor of the render. On a deadline only the rows finished in order are returned,
+     *                whatever the fallback of the monitor: the coordinator never decodes the image, so it has
+     *                no pixel to sample the other cells from.
+     * @return the ascii art.
+     * @throws IOException if a band failed in every attempt.
+     * @throws RenderCancelledException if the monitor cancelled the render.
+     */
+    public char[][] render(ImageSource source, int resolution, CharMatcherSnapshot charset, DitherMode dither,
+                           RenderMonitor monitor) throws IOException, RenderCancelledException {
+        List<BandDescriptor> bands = splitBands(source, resolution, charset, dither);
+        int cellSize = source.getPaddedWidth() / resolution;
+        char[][][] results = new char[bands.size()][][];
+        ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < bands.size(); i++) {
+            pending.add(i);
+        }
+        // every finished band, or the error that ended a band
+        BlockingQueue<Object> finished = new LinkedBlockingQueue<>();
+        // threads left from a stopped render keep the flag of their own render
+        AtomicBoolean stopped = newRender();
+        Thread[] threads = new Thread[Math.min(workers.length, bands.size())];
+        for (int w = 0; w < threads.length; w++) {
+            int slot = w;
+            threads[w] = new Thread(() -> runBands(slot, bands, pending, results, finished, stopped),
+                    "render-worker-" + w);
+            threads[w].setDaemon(true);
+            threads[w].start();
+        }
+
+        monitor.start(source.getPaddedHeight() / cellSize);
+        try {
+            for (int done = 0; done < bands.size(); ) {
+                Object next = finished.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next instanceof IOException) {
+                    stop();
+                    throw (IOException) next;
+                }
+                boolean goOn = next == null ? !monitor.isCancelled() && !monitor.isExpired()
+                        : monitor.advance(bands.get((Integer) next).getHeight() / cellSize
+                        - bands.get((Integer) next).getSkipRows());
+                if (next != null) {
+                    done++;
+                }
+                if (!goOn && done < bands.size()) {
+                    stop();
+                    if (monitor.isCancelled()) {
+                        throw new RenderCancelledException();
+                    }
+                    return stitch(results);
+                }
+            }
+        } catch (InterruptedException e) {
+            stop();
+            Thread.currentThread().interrupt();
+            throw new RenderCancelledException();
+        }
+        return stitch(results);
+    }
+
+    /**
+     * Ends every worker process. The next render starts new ones.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * This function splits the padded grid of an image into bands of whole rows of cells, a few per worker
+     * so a slow band does not hold the other workers idle.
+     * @param source the image.
+     * @param resolution the number of cells in a row.
+     * @param charset the snapshot of the charset.
+     * @param dither the dithering kernel, or null for none.
+     * @return the bands, from the top.
+     */
+    private List<BandDescriptor> splitBands(ImageSource source, int resolution, CharMatcherSnapshot charset,
+                                            DitherMode dither) {
+        int cellSize = source.getPaddedWidth() / resolution;
+        int rows = source.getPaddedHeight() / cellSize;
+        int bandCount = Math.min(rows, workers.length * BANDS_PER_WORKER);
+        StringBuilder chars = new StringBuilder();
+        for (char c : charset.getCharset()) {
+            chars.append(c);
+        }
+        Rectangle image = new Rectangle(0, 0, source.getWidth(), source.getHeight());
+        List<BandDescriptor> bands = new ArrayList<>();
+        for (int band = 0; band < bandCount; band++) {
+            int firstRow = rows * band / bandCount;
+            int endRow = rows * (band + 1) / bandCount;
+            int seedRow = dither == null ? firstRow : Math.max(0, firstRow - DITHER_SEED_ROWS);
+            int top = seedRow * cellSize;
+            int height = (endRow - seedRow) * cellSize;
+            // the band in pixels of the image, cut to the image
+            Rectangle region = new Rectangle(-source.getPaddingLeft(), top - source.getPaddingTop(),
+                    source.getPaddedWidth(), height).intersection(image);
+            if (region.isEmpty()) {
+                region = new Rectangle();
+            }
+            bands.add(new BandDescriptor(source.getFilename(), region, region.x + source.getPaddingLeft(),
+                    region.y + source.getPaddingTop() - top, source.getPaddedWidth(), height, resolution,
+                    charset.getRound().toString(), chars.toString(), dither == null ? "" : dither.toString(),
+                    firstRow - seedRow));
+        }
+        return bands;
+    }
+
+    /**
+     * The loop of a thread of the coordinator: takes bands until none are left and renders them in its
+     * worker process, retrying a failed band in a new process.
+     * @param slot the index of the worker process of the thread.
+     * @param bands the bands.
+     * @param pending the indices of the bands not taken yet.
+     * @param results filled with the rows of every band.
+     * @param finished receives the index of every finished band, or the error of a band that failed.
+     * @param stopped set once the render is stopped, and the processes of its workers ended.
+     */
+    private void runBands(int slot, List<BandDescriptor> bands, ConcurrentLinkedQueue<Integer> pending,
+                          char[][][] results, BlockingQueue<Object> finished, AtomicBoolean stopped) {
+        Integer band;
+        while (!stopped.get() && (band = pending.poll()) != null) {
+            IOException error = null;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                WorkerProcess worker = null;
+                try {
+                    worker = getWorker(slot, stopped);
+                    results[band] = worker.render(bands.get(band));
+                    error = null;
+                    break;
+                } catch (IOException e) {
+                    if (stopped.get()) {
+                        // the process was ended by the stop, the slot may already hold a new one
+                        return;
+                    }
+                    error = e;
+                    replaceWorker(slot, worker);
+                }
+            }
+            finished.add(error == null ? band : new IOException("Band " + band + " failed " + MAX_ATTEMPTS
+                    + " times", error));
+        }
+    }
+
+    /**
+     * Returns the worker process of a slot for a render, starting it if needed. A thread of a stopped render
+     * never gets a worker, since the slot may already belong to the next render.
+     * @param slot the index of the worker.
+     * @param stopped the flag of the render of the thread.
+     * @return the worker.
+     * @throws IOException if the render was stopped or the process could not be started.
+     */
+    private synchronized WorkerProcess getWorker(int slot, AtomicBoolean stopped) throws IOException {
+        if (stopped.get()) {
+            throw new IOException("The render was stopped");
+        }
+        if (workers[slot] == null) {
+            workers[slot] = new WorkerProcess();
+        }
+        return workers[slot];
+    }
+
+    /**
+     * Ends the worker process of a slot after it failed, so the next band starts a new one. A slot that
+     * holds another process by then is left alone.
+     * @param slot the index of the worker.
+     * @param failed the worker that failed, or null if none was started.
+     */
+    private synchronized void replaceWorker(int slot, WorkerProcess failed) {
+        if (failed != null && workers[slot] == failed) {
+            failed.close();
+            workers[slot] = null;
+        }
+    }
+
+    /**
+     * Starts a new render, with a new flag for its threads.
+     * @return the flag of the render.
+     */
+    private synchronized AtomicBoolean newRender() {
+        stopped = new AtomicBoolean();
+        return stopped;
+    }
+
+    /**
+     * Stops the threads of the render in progress and ends every worker process.
+     */
+    private synchronized void stop() {
+        stopped.set(true);
+        for (int slot = 0; slot < workers.length; slot++) {
+            replaceWorker(slot, workers[slot]);
+        }
+    }
+
+    /**
+     * This function stitches the rows of the bands in order, up to the first band that is not finished.
+     * @param results the rows of every band, null for the bands not finished.
+     * @return the rows.
+     */
+    private static char[][] stitch(char[][][] results) {
+        List<char[]> rows = new ArrayList<>();
+        for (char[][] band : results) {
+            if (band == null) {
+                break;
+            }
+            rows.addAll(Arrays.asList(band));
+        }
+        return rows.toArray(new char[0][]);
+    }
+
+    /**
+     * A worker process and the streams of its protocol.
+     */
+    private static class WorkerProcess {
+        private final Process process;
+        private final DataOutputStream in;
+        private final DataInputStream out;
+
+        /**
+         * Starts a worker process with the class path and java of this process, checking the font of the glyph table
+         * if this process does.
+         * @throws IOException if the process could not be started.
+         */
+        WorkerProcess() throws IOException {
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            ProcessBuilder builder = new ProcessBuilder(java, "-Djava.awt.headless=true",
+                    "-D" + GlyphTable.VERIFY_PROPERTY + "=" + Boolean.getBoolean(GlyphTable.VERIFY_PROPERTY),
+                    "-cp", System.getProperty("java.class.path"), RenderWorker.class.getName());
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            this.process = builder.start();
+            this.in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Sends a band to the worker and waits for its rows.
+         * @param band the band.
+         * @return the rows of the band.
+         * @throws IOException if the worker failed or died.
+         */
+        char[][] render(BandDescriptor band) throws IOException {
+            band.write(in);
+            in.flush();
+            int rows = out.readInt();
+            if (rows == RenderWorker.ERROR) {
+                throw new IOException(out.readUTF());
+            }
+            int cols = out.readInt();
+            char[][] chars = new char[rows][cols];
+            for (char[] row : chars) {
+                for (int col = 0; col < cols; col++) {
+                    row[col] = out.readChar();
+                }
+            }
+            return chars;
+        }
+
+        /**
+         * Ends the worker process.
+         */
+        void close() {
+            process.destroyForcibly();
+        }
+    }
+}
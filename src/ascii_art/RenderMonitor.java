@@ -0,0 +1,133 @@
+package ascii_art;
+
+import java.util.function.Consumer;
+
+/**
+ * The control of a single render, shared with the threads that may stop it. The render reports every row
+ * of cells it finished; the monitor reports the progress and the time left from time to time, and tells
+ * the render to stop once it is cancelled or its deadline passed. On a deadline the render returns what it
+ * has: the rows it finished, or every row with the unfinished cells sampled from a single pixel.
+ */
+public class RenderMonitor {
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    private final long startNanos;
+    private final long deadlineNanos;
+    private final boolean coarseFallback;
+    private final Consumer<String> reporter;
+    private volatile boolean cancelled;
+    private long rowsStartNanos;
+    private long lastReportNanos;
+    private volatile int total;
+    private volatile int done;
+
+    /**
+     * Constructor for a monitor without a deadline that reports nothing.
+     */
+    public RenderMonitor() {
+        this(0, false, null);
+    }
+
+    /**
+     * Constructor for the monitor. The time of the deadline starts now.
+     * @param timeoutMillis the time the render may take, 0 for no deadline.
+     * @param coarseFallback true to sample the unfinished cells on a deadline, false to return only the
+     *                       finished rows.
+     * @param reporter receives the progress reports, or null for no reports.
+     */
+    public RenderMonitor(long timeoutMillis, boolean coarseFallback, Consumer<String> reporter) {
+        this.startNanos = System.nanoTime();
+        this.deadlineNanos = timeoutMillis > 0 ? timeoutMillis * 1_000_000L : Long.MAX_VALUE;
+        this.coarseFallback = coarseFallback;
+        this.reporter = reporter;
+        this.rowsStartNanos = startNanos;
+        this.lastReportNanos = startNanos;
+        this.cancelled = false;
+    }
+
+    /**
+     * Sets the number of rows of the render, once the image is decoded and the rows start.
+     * @param total the number of rows.
+     */
+    void start(int total) {
+        this.total = total;
+        this.done = 0;
+        this.rowsStartNanos = System.nanoTime();
+        this.lastReportNanos = rowsStartNanos;
+    }
+
+    /**
+     * Counts finished rows, and reports the progress if the last report is old enough.
+     * @param rows the number of rows finished since the last call.
+     * @return true to go on, false if the render is cancelled or its deadline passed.
+     */
+    boolean advance(int rows) {
+        done += rows;
+        long now = System.nanoTime();
+        if (reporter != null && now - lastReportNanos >= REPORT_INTERVAL_NANOS && done < total) {
+            lastReportNanos = now;
+            reporter.accept(describeProgress());
+        }
+        return !cancelled && !isExpired();
+    }
+
+    /**
+     * Cancels the render. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether the render is cancelled.
+     * @return true if cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks whether the deadline of the render passed.
+     * @return true if the render took longer than its timeout.
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - startNanos > deadlineNanos;
+    }
+
+    /**
+     * Checks what the render returns on a deadline.
+     * @return true to sample the unfinished cells, false to return only the finished rows.
+     */
+    public boolean isCoarseFallback() {
+        return coarseFallback;
+    }
+
+    /**
+     * Returns the number of finished rows.
+     * @return the finished rows.
+     */
+    public int getDone() {
+        return done;
+    }
+
+    /**
+     * Returns the number of rows of the render.
+     * @return the rows.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Describes the progress: the finished rows and the time left, assuming the rows left take as long as
+     * the finished ones.
+     * @return the description.
+     */
+    public String describeProgress() {
+        double elapsed = (System.nanoTime() - rowsStartNanos) / NANOS_IN_SECOND;
+        String eta = done == 0 ? "unknown" : String.format("%.1f s", elapsed * (total - done) / done);
+        return String.format("Rendered %d of %d rows (%d%%), time left: %s.", done, total,
+                total == 0 ? 0 : 100L * done / total, eta);
+    }
+}
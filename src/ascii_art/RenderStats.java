@@ -0,0 +1,112 @@
+package ascii_art;
+
+/**
+ * Counters of a single render: how many tiles were rendered and which path each of them took.
+ */
+public class RenderStats {
+    private int tiles;
+    private int uniformTiles;
+    private int cachedTiles;
+    private int sampledTiles;
+    private int derivedTiles;
+    private int memoisedChars;
+    private int matcherScans;
+    private long elapsedNanos;
+
+    /** Counts a tile whose brightness was computed. */
+    void countTile() {
+        tiles++;
+    }
+
+    /**
+     * Counts tiles whose brightness was computed.
+     * @param count the number of tiles.
+     */
+    void countTiles(int count) {
+        tiles += count;
+    }
+
+    /** Counts a tile whose brightness came from the uniformity index, without reading its pixels. */
+    void countUniformTile() {
+        tiles++;
+        uniformTiles++;
+    }
+
+    /** Counts a tile whose brightness came from the tile cache. */
+    void countCachedTile() {
+        tiles++;
+        cachedTiles++;
+    }
+
+    /** Counts a tile whose brightness was sampled from a single pixel after the deadline of the render. */
+    void countSampledTile() {
+        tiles++;
+        sampledTiles++;
+    }
+
+    /**
+     * Counts tiles whose brightness came from the brightness pyramid, without reading their pixels.
+     * @param count the number of tiles.
+     */
+    void countDerivedTiles(int count) {
+        tiles += count;
+        derivedTiles += count;
+    }
+
+    /** Counts a char found in the quantised table of the charset. */
+    void countMemoisedChar() {
+        memoisedChars++;
+    }
+
+    /** Counts a char found by a full scan of the charset. */
+    void countMatcherScan() {
+        matcherScans++;
+    }
+
+    /**
+     * Sets the duration of the render.
+     * @param elapsedNanos the duration in nanoseconds.
+     */
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getTiles() {
+        return tiles;
+    }
+
+    public int getUniformTiles() {
+        return uniformTiles;
+    }
+
+    public int getCachedTiles() {
+        return cachedTiles;
+    }
+
+    public int getSampledTiles() {
+        return sampledTiles;
+    }
+
+    public int getDerivedTiles() {
+        return derivedTiles;
+    }
+
+    public int getMemoisedChars() {
+        return memoisedChars;
+    }
+
+    public int getMatcherScans() {
+        return matcherScans;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Tiles: %d, uniform: %d, cached: %d, derived: %d, sampled: %d, "
+                        + "memoised chars: %d, matcher scans: %d, time: %.1f ms", tiles, uniformTiles,
+                cachedTiles, derivedTiles, sampledTiles, memoisedChars, matcherScans, elapsedNanos / 1e6);
+    }
+}
@@ -0,0 +1,104 @@
+package ascii_art;
+
+import ascii_art.exceptions.RenderCancelledException;
+import image.Image;
+import image.UniformityIndex;
+import image_char_matching.RoundMode;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * The main class of a worker process of the {@link RenderCoordinator}. The worker reads band descriptors
+ * from its standard input, renders every band with the same algorithm as the shell, decoding only the
+ * part of the image inside the band, and writes the rows of chars to its standard output. It ends when its
+ * standard input ends.
+ */
+public class RenderWorker {
+    /** The row count of a response that carries an error message instead of rows. */
+    static final int ERROR = -1;
+
+    /**
+     * This function renders a band.
+     * @param band the band.
+     * @return the rows of chars of the band.
+     * @throws IOException if the image could not be read.
+     */
+    static char[][] renderBand(BandDescriptor band) throws IOException {
+        RoundMode round = RoundMode.fromName(band.getRound());
+        if (round == null || band.getCharset().length() < 2
+                || (!band.getDither().isEmpty() && DitherMode.fromName(band.getDither()) == null)) {
+            throw new IOException("Invalid band: round " + band.getRound() + ", charset " + band.getCharset()
+                    + ", dither " + band.getDither());
+        }
+        SubImgCharMatcher charMatcher = new SubImgCharMatcher(band.getCharset().toCharArray());
+        charMatcher.setRoundSubMatcher(round);
+
+        // the pixels of the band outside the source rectangle are padding, white like the crop leaves them
+        Image bandImage;
+        if (band.getSource().isEmpty()) {
+            bandImage = Image.white(band.getWidth(), band.getHeight());
+        } else {
+            Image source = Image.loadRegion(band.getFilename(), band.getSource());
+            bandImage = source.crop(-band.getOffsetY(), -band.getOffsetX(), band.getWidth(), band.getHeight());
+        }
+        AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(bandImage, band.getResolution(),
+                charMatcher.snapshot());
+        asciiArtAlgorithm.setUniformityIndex(new UniformityIndex(bandImage));
+        if (!band.getDither().isEmpty()) {
+            asciiArtAlgorithm.setDither(DitherMode.fromName(band.getDither()));
+        }
+        try {
+            char[][] rows = asciiArtAlgorithm.run();
+            return Arrays.copyOfRange(rows, band.getSkipRows(), rows.length);
+        } catch (RenderCancelledException e) {
+            // a worker has no deadline and is never cancelled, the coordinator ends the process instead
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * This function is the main function of the worker process.
+     * @param args not used.
+     */
+    public static void main(String[] args) {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        // the standard output carries the responses only
+        System.setOut(new PrintStream(System.err, true));
+        try {
+            while (true) {
+                BandDescriptor band;
+                try {
+                    band = BandDescriptor.read(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    char[][] rows = renderBand(band);
+                    out.writeInt(rows.length);
+                    out.writeInt(rows.length == 0 ? 0 : rows[0].length);
+                    for (char[] row : rows) {
+                        for (char c : row) {
+                            out.writeChar(c);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    out.writeInt(ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the coordinator is gone
+            System.exit(1);
+        }
+    }
+}
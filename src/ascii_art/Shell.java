@@ -1,16 +1,26 @@
 package ascii_art;
 
+import ascii_art.exceptions.CharsetTooSmallException;
 import ascii_art.exceptions.OutOfImageSizeException;
+import ascii_art.exceptions.RenderCancelledException;
 import ascii_output.AsciiOutput;
+import ascii_output.BinaryAsciiOutput;
+import ascii_output.BinaryAsciiReader;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
-import image.Image;
-import image.PaddingImage;
+import image.ImageSource;
+import image_char_matching.CharMatcherSnapshot;
+import image_char_matching.RoundMode;
 import image_char_matching.SubImgCharMatcher;
+import sun.misc.Signal;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * This class represents the shell of the program. It is responsible for
@@ -20,12 +30,31 @@ public class Shell {
     private final SubImgCharMatcher subImgCharMatcher;
     private int resolution;
     private final String defaultOutput;
-    private String round;
+    private RoundMode round;
     private AsciiOutput output;
+    private double exactAspectRatio;
+    private ImageSource imageSource;
+    private Viewport viewport;
+    private RenderStats lastStats;
+    private double brailleThreshold;
+    private ImageWatcher watcher;
+    private double[][] lastBrightness;
+    private String lastGrid;
+    private long deadlineMillis;
+    private boolean coarseFallback;
+    private volatile RenderMonitor currentRender;
+    private RenderCoordinator coordinator;
+    private DitherMode dither;
+    private final BlockingQueue<String> commands;
 
     private static final int MIN_ASCII = 32;
     private static final int MAX_ASCII = 126;
     private static final int DEFAULT_RES = 2;
+    private static final double DEFAULT_BRAILLE_THRESHOLD = 0.5;
+    private static final long WATCH_DEBOUNCE_MILLIS = 200;
+    private static final int INTERRUPTED_EXIT_CODE = 130;
+    private static final int MAX_WORKERS = 64;
+    private static final String RELOAD_COMMAND = "reload";
 
 
     /**
@@ -36,8 +65,21 @@ public class Shell {
         this.subImgCharMatcher = new SubImgCharMatcher(chars);
         this.resolution = DEFAULT_RES;
         this.defaultOutput = "console";
-        this.round = "abs";
+        this.round = RoundMode.ABS;
         this.output = new ConsoleAsciiOutput();
+        this.exactAspectRatio = 0;
+        this.viewport = null;
+        this.lastStats = null;
+        this.brailleThreshold = Double.NaN;
+        this.watcher = null;
+        this.lastBrightness = null;
+        this.lastGrid = null;
+        this.deadlineMillis = 0;
+        this.coarseFallback = true;
+        this.currentRender = null;
+        this.coordinator = null;
+        this.dither = null;
+        this.commands = new LinkedBlockingQueue<>();
     }
 
     /**
@@ -50,83 +92,508 @@ public class Shell {
      * @throws OutOfImageSizeException if the resolution exceeds the boundaries.
      */
     public void run(String imageName) throws IOException, OutOfImageSizeException {
-        // Create a new AsciiArtAlgorithm object
+        open(imageName);
+        handleInterrupt();
+        Thread reader = new Thread(this::readCommands, "command-reader");
+        reader.setDaemon(true);
+        reader.start();
         String inputFromU;
-        do {
-            System.out.print(">>> ");
-            inputFromU = KeyboardInput.readLine();
-            Image orgImage = null;
-            Image image = null;
+        try {
+            do {
+                System.out.print(">>> ");
+                inputFromU = nextCommand();
+                execute(inputFromU);
+            }
+            while (!inputFromU.toLowerCase().startsWith("exit"));
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * This function releases everything the shell started: the watcher, the worker processes and the
+     * decoded image.
+     */
+    private void close() {
+        if (this.watcher != null) {
+            this.watcher.stop();
+        }
+        if (this.coordinator != null) {
+            this.coordinator.close();
+        }
+        try {
+            this.imageSource.close();
+        } catch (IOException e) {
+            // the temporary files of the image are deleted when the program ends anyway
+        }
+    }
+
+    /**
+     * The loop of the reader thread: queues every line the user types for the command loop. The commands
+     * of the watch mode go through the same queue, so every command runs on the thread of the loop and
+     * the state of the shell is never changed by two threads. A cancel typed during a render cancels it
+     * right away, since the loop only takes the next command after the render. The end of the input exits.
+     */
+    private void readCommands() {
+        try {
+            while (true) {
+                String line = KeyboardInput.readLine();
+                RenderMonitor render = this.currentRender;
+                if (render != null && line.toLowerCase().startsWith("cancel")) {
+                    render.cancel();
+                } else {
+                    this.commands.add(line);
+                }
+            }
+        } catch (NoSuchElementException e) {
+            this.commands.add("exit");
+        }
+    }
+
+    /**
+     * This function waits for the next command, typed or queued by the watch mode.
+     * @return the command.
+     */
+    private String nextCommand() {
+        try {
+            return this.commands.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "exit";
+        }
+    }
+
+    /**
+     * This function opens the image of the shell. Only the header is read, the pixels are decoded when a
+     * render needs them.
+     * @param imageName the name of the image.
+     * @throws IOException if the image could not be read.
+     */
+    void open(String imageName) throws IOException {
+        try {
+            open(new ImageSource(imageName));
+        } catch (IOException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * This function opens an image that is already read, and may already be decoded, as the image of the
+     * shell.
+     * @param imageSource the image.
+     */
+    void open(ImageSource imageSource) {
+        this.imageSource = imageSource;
+    }
+
+    /**
+     * This function runs one command of the shell, exactly as if the user typed it.
+     * @param inputFromU the command.
+     * @throws IOException if the command is not one of the commands of the shell.
+     * @throws OutOfImageSizeException if the resolution exceeds the boundaries.
+     */
+    void execute(String inputFromU) throws IOException, OutOfImageSizeException {
+        if (inputFromU.toLowerCase().startsWith("chars")) {
+            printChars();
+        } else if (inputFromU.toLowerCase().startsWith("add")) {
+            try { addCharToSet(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not add due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("remove")) {
+            try { removeCharFromSet(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not remove due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("res")) {
+            try { setResolution(inputFromU.split(" "));
+                System.out.println("Resolution set to " + this.resolution + ".");
+            } catch (OutOfImageSizeException e) {
+                System.out.println("Did not change resolution due to exceeding boundaries.");
+            } catch (IOException e) {
+                System.out.println("Did not change resolution due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("round")){
             try {
-                orgImage = new Image(imageName);
-                PaddingImage paddingImage = new PaddingImage(orgImage);
-                image = paddingImage.getPaddingImage();
+                setRound(inputFromU.split(" "));
             } catch (IOException e) {
-                throw new IOException(e);
+                System.out.println("Did not change rounding method due to incorrect format.");
             }
-            if (inputFromU.toLowerCase().startsWith("chars")) {
-                printChars();
-            } else if (inputFromU.toLowerCase().startsWith("add")) {
-                try { addCharToSet(inputFromU.split(" "));
-                } catch (IOException e) {
-                    System.out.println("Did not add due to incorrect format.");
-                }
-            } else if (inputFromU.toLowerCase().startsWith("remove")) {
-                try { removeCharFromSet(inputFromU.split(" "));
-                } catch (IOException e) {
-                    System.out.println("Did not remove due to incorrect format.");
-                }
-            } else if (inputFromU.toLowerCase().startsWith("res")) {
-                try { setResolution((inputFromU.split(" ")), image);
-                    System.out.println("Resolution set to " + this.resolution + ".");
-                } catch (OutOfImageSizeException e) {
-                    System.out.println("Did not change resolution due to exceeding boundaries.");
-                } catch (IOException e) {
-                    System.out.println("Did not change resolution due to incorrect format.");
-                }
-            } else if (inputFromU.toLowerCase().startsWith("round")){
-                try {
-                    setRound(inputFromU.split(" "));
-                } catch (IOException e) {
-                    System.out.println("Did not change rounding method due to incorrect format.");
+        } else if (inputFromU.toLowerCase().startsWith("output")) {
+            try {
+                setOutput(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change output method due to incorrect format.");
+            }
+        }
+        else if(inputFromU.startsWith("asciiArt")){
+
+            try {
+                runAlgorithmAscii();
+            } catch (CharsetTooSmallException | RenderCancelledException e) {
+                System.out.println(e.getMessage());
+            } catch (IOException e) {
+                System.out.println("Did not execute due to an unreadable image.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("cancel")) {
+            cancelRender();
+        } else if (inputFromU.toLowerCase().startsWith("deadline")) {
+            try {
+                setDeadline(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change deadline due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("workers")) {
+            try {
+                setWorkers(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change workers due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("dither")) {
+            try {
+                setDither(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change dither due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("mode")) {
+            try {
+                setMode(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change mode due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("grid")) {
+            try {
+                setGrid(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change grid due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("view")) {
+            try {
+                setViewport(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change viewport due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("zoom")) {
+            try {
+                zoomViewport(inputFromU.split(" "));
+            } catch (OutOfImageSizeException e) {
+                System.out.println("Did not zoom due to exceeding boundaries.");
+            } catch (IOException e) {
+                System.out.println("Did not zoom due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("pan")) {
+            try {
+                panViewport(inputFromU.split(" "));
+            } catch (OutOfImageSizeException e) {
+                System.out.println("Did not pan due to exceeding boundaries.");
+            } catch (IOException e) {
+                System.out.println("Did not pan due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith(RELOAD_COMMAND)) {
+            reloadImage();
+        } else if (inputFromU.toLowerCase().startsWith("watch")) {
+            try {
+                setWatch(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not change watch due to incorrect format.");
+            }
+        } else if (inputFromU.toLowerCase().startsWith("stats")) {
+            printStats();
+        } else if (inputFromU.toLowerCase().startsWith("replay")) {
+            try {
+                replay(inputFromU.split(" "));
+            } catch (IOException e) {
+                System.out.println("Did not replay due to incorrect format.");
+            }
+        } else if (!inputFromU.toLowerCase().startsWith("exit")) {
+            // exit ends the loop of run, which releases the shell
+            throw new IOException();
+        }
+    }
+
+    /**
+     * This function runs the ASCII art algorithm according to the image, resolution, charset and rounding
+     * method that the user decided. When a viewport is set, only the viewport is rendered.
+     * @throws CharsetTooSmallException if the charset is too small.
+     * @throws IOException if the image could not be decoded.
+     * @throws RenderCancelledException if the render was cancelled.
+     */
+    private void runAlgorithmAscii() throws CharsetTooSmallException, IOException, RenderCancelledException {
+        render(null);
+    }
+
+    /**
+     * This function renders the image to the current output. After the image changed on disk, only the
+     * tiles over the changed rectangles are computed again, if the previous render used the same grid;
+     * viewports reuse the tile cache, which dropped the changed tiles.
+     * @param changed the changed rectangles of the padded image, or null to compute every tile.
+     * @throws CharsetTooSmallException if the charset is too small.
+     * @throws IOException if the image could not be decoded.
+     * @throws RenderCancelledException if the render was cancelled.
+     */
+    private void render(List<Rectangle> changed)
+            throws CharsetTooSmallException, IOException, RenderCancelledException {
+        // take one snapshot so the charset cannot change between the check and the run
+        CharMatcherSnapshot charset = this.subImgCharMatcher.snapshot();
+        if (charset.getCharset().size() < 2 && (!isBraille() || this.viewport != null)) {
+            throw new CharsetTooSmallException();
+        }
+        RenderMonitor monitor = new RenderMonitor(this.deadlineMillis, this.coarseFallback, System.out::println);
+        this.currentRender = monitor;
+        try {
+            renderWith(monitor, charset, changed);
+        } finally {
+            this.currentRender = null;
+        }
+        if (monitor.getDone() < monitor.getTotal()) {
+            System.out.println("Deadline reached after " + monitor.getDone() + " of " + monitor.getTotal()
+                    + " rows.");
+        }
+    }
+
+    /**
+     * This function runs the algorithm of the current settings under a monitor and outputs the ascii art.
+     * @param monitor the monitor of the render.
+     * @param charset the snapshot of the charset.
+     * @param changed the changed rectangles of the padded image, or null to compute every tile.
+     * @throws IOException if the image could not be decoded.
+     * @throws RenderCancelledException if the render was cancelled.
+     */
+    private void renderWith(RenderMonitor monitor, CharMatcherSnapshot charset, List<Rectangle> changed)
+            throws IOException, RenderCancelledException {
+        char[][] asciiArt;
+        if (this.viewport != null) {
+            ViewportAlgorithm viewportAlgorithm = new ViewportAlgorithm(this.imageSource, this.resolution,
+                    charset, this.viewport);
+            viewportAlgorithm.setMonitor(monitor);
+            asciiArt = viewportAlgorithm.run();
+            this.lastStats = viewportAlgorithm.getStats();
+        } else if (this.coordinator != null && !isExactGrid() && !isBraille()) {
+            long start = System.nanoTime();
+            asciiArt = this.coordinator.render(this.imageSource, this.resolution, charset, this.dither,
+                    monitor);
+            this.lastStats = new RenderStats();
+            this.lastStats.countTiles(asciiArt.length * this.resolution);
+            this.lastStats.setElapsedNanos(System.nanoTime() - start);
+            this.lastBrightness = null;
+        } else {
+            AsciiArtAlgorithm asciiArtAlgorithm;
+            if (isExactGrid()) {
+                asciiArtAlgorithm = new AsciiArtAlgorithm(this.imageSource.getImage(), this.resolution, charset);
+                asciiArtAlgorithm.setExactGrid(this.exactAspectRatio);
+            } else {
+                asciiArtAlgorithm = new AsciiArtAlgorithm(this.imageSource.getPaddedImage(), this.resolution,
+                        charset);
+                asciiArtAlgorithm.setUniformityIndex(this.imageSource.getUniformityIndex());
+                asciiArtAlgorithm.setBrightnessPyramid(this.imageSource.getBrightnessPyramid());
+            }
+            if (isBraille()) {
+                asciiArtAlgorithm.setBraille(this.brailleThreshold);
+            }
+            asciiArtAlgorithm.setDither(this.dither);
+            asciiArtAlgorithm.setMonitor(monitor);
+            String grid = describeGrid();
+            if (changed != null && this.lastBrightness != null && grid.equals(this.lastGrid)) {
+                asciiArt = asciiArtAlgorithm.runChanged(this.lastBrightness, changed);
+            } else {
+                asciiArt = asciiArtAlgorithm.run();
+            }
+            // a render stopped by its deadline is not reused
+            boolean finished = monitor.getDone() == monitor.getTotal();
+            this.lastBrightness = finished ? asciiArtAlgorithm.getBrightness() : null;
+            this.lastGrid = grid;
+            this.lastStats = asciiArtAlgorithm.getStats();
+        }
+        this.output.out(asciiArt);
+    }
+
+    /**
+     * This function describes the grid of the brightness of a render, so the brightness is reused only by
+     * a render on the same grid.
+     * @return the resolution, grid and mode.
+     */
+    private String describeGrid() {
+        return this.resolution + ";" + this.exactAspectRatio + ";" + isBraille();
+    }
+
+    /**
+     * This function starts or stops watching the image: "watch" renders the image again to the current
+     * output every time the file changes, computing only the tiles that changed, and "watch stop" stops.
+     * The watcher queues a reload command after every change, which runs between the commands of the user.
+     * @param words watch, optionally followed by stop.
+     * @throws IOException if the option is not valid or the image cannot be watched.
+     */
+    private void setWatch(String[] words) throws IOException {
+        if (words.length == 1) {
+            if (this.watcher == null) {
+                this.watcher = new ImageWatcher(this.imageSource.getFilename(), WATCH_DEBOUNCE_MILLIS,
+                        () -> this.commands.add(RELOAD_COMMAND));
+            }
+            this.watcher.start();
+        } else if (words.length == 2 && words[1].equalsIgnoreCase("stop")) {
+            if (this.watcher != null) {
+                this.watcher.stop();
+            }
+        } else {
+            throw new IOException();
+        }
+    }
+
+    /**
+     * This function runs the reload command, queued by the watcher after the image changed on disk. It
+     * decodes the image again and renders the tiles that changed. An image of a new size starts over from
+     * a new source.
+     */
+    private void reloadImage() {
+        try {
+            List<Rectangle> changed = this.imageSource.reload();
+            if (changed == null) {
+                ImageSource previous = this.imageSource;
+                this.imageSource = new ImageSource(previous.getFilename());
+                previous.close();
+                this.lastBrightness = null;
+                if (this.viewport != null && !meetsImage(this.viewport)) {
+                    this.viewport = null;
                 }
-            } else if (inputFromU.toLowerCase().startsWith("output")) {
-                try {
-                    setOutput(inputFromU.split(" "));
-                } catch (IOException e) {
-                    System.out.println("Did not change output method due to incorrect format.");
+                while (this.resolution > getMaxCharsInRow()) {
+                    this.resolution /= 2;
                 }
+            } else if (changed.isEmpty()) {
+                return;
             }
-            else if(inputFromU.startsWith("asciiArt")){
+            render(changed);
+        } catch (CharsetTooSmallException | RenderCancelledException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            // the file may still be written, the next change renders it
+            System.out.println("Did not reload due to an unreadable image.");
+        }
+    }
 
-                try {
-                    runAlgorithmAscii(image);
-                } catch (IOException e) {
-                    System.out.println("Did not execute. Charset is too small.");
+    /**
+     * This function makes Ctrl-C cancel the render in progress instead of ending the program, like a cancel
+     * typed during the render. Without a render in progress Ctrl-C ends the program as usual, after
+     * releasing what the shell started.
+     */
+    private void handleInterrupt() {
+        try {
+            Signal.handle(new Signal("INT"), signal -> {
+                RenderMonitor render = this.currentRender;
+                if (render == null) {
+                    close();
+                    System.exit(INTERRUPTED_EXIT_CODE);
                 }
-            } else if (inputFromU.toLowerCase().startsWith("exit")) {
-                System.exit(0);
+                render.cancel();
+            });
+        } catch (IllegalArgumentException e) {
+            // the platform has no such signal, renders are cancelled with the cancel command only
+        }
+    }
 
-            } else throw new IOException();
+    /**
+     * This function answers a cancel that reached the command loop, which happens only when no render
+     * runs: a cancel typed or a Ctrl-C during a render cancels it right away.
+     */
+    private void cancelRender() {
+        System.out.println("No render to cancel.");
+    }
 
+    /**
+     * This function sets the number of worker processes: "workers n" renders the padded grid in n worker
+     * processes, each decoding and rendering bands of rows, and "workers 0" goes back to rendering in this
+     * process. The exact grid, braille and viewports are always rendered in this process. This process
+     * never decodes the image in worker mode, so on a deadline only the rows finished in order are output,
+     * even with the coarse fallback.
+     * @param words the number of workers.
+     * @throws IOException if the number is not valid.
+     */
+    private void setWorkers(String[] words) throws IOException {
+        if (words.length != 2) {
+            throw new IOException();
+        }
+        int workers;
+        try {
+            workers = Integer.parseInt(words[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
         }
-        while (!inputFromU.toLowerCase().startsWith("exit"));
+        if (workers < 0 || workers > MAX_WORKERS) {
+            throw new IOException();
+        }
+        if (this.coordinator != null) {
+            this.coordinator.close();
+        }
+        this.coordinator = workers == 0 ? null : new RenderCoordinator(workers);
     }
 
     /**
-     * This function runs the ASCII art algorithm according to the image, resolution, charset and rounding
-     * method that the user decided.
-     * @param image the image.
-     * @throws IOException if the charset is too small.
+     * This function sets the dithering of the renders: "dither fs" or "dither atkinson" spreads the
+     * difference between the brightness of every cell and the brightness of its char over the next cells,
+     * so gradients come out as a mix of chars instead of flat bands. "dither off" matches every cell alone.
+     * Braille and viewports are never dithered.
+     * @param words the name of the kernel.
+     * @throws IOException if the kernel is not known.
      */
-    private void runAlgorithmAscii(Image image) throws IOException {
-        if (this.subImgCharMatcher.getCharset().size() < 2) {
+    private void setDither(String[] words) throws IOException {
+        if (words.length != 2) {
             throw new IOException();
         }
-        AsciiArtAlgorithm asciiArtAlgorithm = new
-                AsciiArtAlgorithm(image, this.resolution, this.subImgCharMatcher, this.round);
-        char[][] asciiArt = asciiArtAlgorithm.run();
-        this.output.out(asciiArt);
+        if (words[1].equalsIgnoreCase("off")) {
+            this.dither = null;
+            return;
+        }
+        DitherMode dither = DitherMode.fromName(words[1]);
+        if (dither == null) {
+            throw new IOException();
+        }
+        this.dither = dither;
+    }
+
+    /**
+     * This function sets the deadline of the renders: "deadline ms [coarse|partial]" stops every render
+     * after that many milliseconds, and outputs either every row with the unfinished cells sampled from a
+     * single pixel (coarse, the default) or only the finished rows (partial). "deadline off" removes it.
+     * Renders in worker processes always output only the finished rows, since sampling the unfinished
+     * cells would mean decoding the image in this process.
+     * @param words the deadline and optionally the fallback, or off.
+     * @throws IOException if the deadline or the fallback is not valid.
+     */
+    private void setDeadline(String[] words) throws IOException {
+        if (words.length == 2 && words[1].equalsIgnoreCase("off")) {
+            this.deadlineMillis = 0;
+            return;
+        }
+        if (words.length < 2 || words.length > 3) {
+            throw new IOException();
+        }
+        long millis;
+        try {
+            millis = Long.parseLong(words[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+        if (millis < 1) {
+            throw new IOException();
+        }
+        boolean coarse = true;
+        if (words.length == 3) {
+            if (words[2].equalsIgnoreCase("partial")) {
+                coarse = false;
+            } else if (!words[2].equalsIgnoreCase("coarse")) {
+                throw new IOException();
+            }
+        }
+        this.deadlineMillis = millis;
+        this.coarseFallback = coarse;
+    }
+
+    /** This function prints the counters of the last render: how many tiles took each fast path. */
+    private void printStats() {
+        if (this.lastStats == null) {
+            System.out.println("No render yet.");
+        } else {
+            System.out.println(this.lastStats);
+        }
     }
 
     /** This function prints the characters that the algorithm uses to create the ASCII art. */
@@ -223,13 +690,13 @@ public class Shell {
     /**
      * This function sets the resolution if possible.
      * @param words the new resolution.
-     * @param image the image.
      * @throws OutOfImageSizeException if the rise of lower the resolution is out of image bounds.
      * @throws IOException if the change of resolution is not valid.
      */
-    private void setResolution(String[] words, Image image) throws IOException, OutOfImageSizeException {
-        int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
-        int maxCharsInRow = image.getWidth();
+    private void setResolution(String[] words) throws IOException, OutOfImageSizeException {
+        int minCharsInRow = isExactGrid() ? 1 : Math.max(1,
+                this.imageSource.getPaddedWidth() / this.imageSource.getPaddedHeight());
+        int maxCharsInRow = getMaxCharsInRow();
         String newRes = "";
         if (words.length != 1) {
             newRes = words[1];
@@ -244,11 +711,211 @@ public class Shell {
                 throw new OutOfImageSizeException();
             }
             this.resolution /= 2;
+        } else if (isExactGrid() && newRes.matches("\\d+")) {
+            // the exact grid accepts any number of columns
+            int columns = Integer.parseInt(newRes);
+            if (columns < minCharsInRow || columns > maxCharsInRow) {
+                throw new OutOfImageSizeException();
+            }
+            this.resolution = columns;
         } else if (!newRes.equals("")) {
             throw new IOException();
         }
     }
 
+    /**
+     * This function returns the maximal resolution: one char per pixel, or one braille cell per two
+     * pixels since every cell has two columns of dots.
+     * @return the maximal number of chars in a row.
+     */
+    private int getMaxCharsInRow() {
+        int width = isExactGrid() ? this.imageSource.getWidth() : this.imageSource.getPaddedWidth();
+        return isBraille() ? Math.max(1, width / 2) : width;
+    }
+
+    /**
+     * This function checks whether the shell renders braille cells instead of chars of the charset.
+     * @return true for braille.
+     */
+    private boolean isBraille() {
+        return !Double.isNaN(this.brailleThreshold);
+    }
+
+    /**
+     * This function sets the output mode: "mode braille [threshold]" packs 2 by 4 sub tiles of every cell
+     * into a braille character, raising the dots of the sub tiles darker than the threshold (0.5 by
+     * default), and "mode ascii" goes back to the charset. Viewports are always rendered with the
+     * charset.
+     * @param words the mode and optionally the threshold.
+     * @throws IOException if the mode or the threshold is not valid.
+     */
+    private void setMode(String[] words) throws IOException {
+        String mode = "";
+        if (words.length != 1) {
+            mode = words[1];
+        }
+        if (mode.equalsIgnoreCase("braille")) {
+            double threshold = DEFAULT_BRAILLE_THRESHOLD;
+            if (words.length > 2) {
+                try {
+                    threshold = Double.parseDouble(words[2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(e);
+                }
+                if (!(threshold >= 0 && threshold <= 1)) {
+                    throw new IOException();
+                }
+            }
+            this.brailleThreshold = threshold;
+            // a braille cell needs two pixels in a row
+            while (this.resolution > getMaxCharsInRow()) {
+                this.resolution /= 2;
+            }
+        } else if (mode.equalsIgnoreCase("ascii")) {
+            this.brailleThreshold = Double.NaN;
+        } else {
+            throw new IOException();
+        }
+    }
+
+    /**
+     * This function checks whether the shell renders with the exact grid instead of the padded image.
+     * @return true for the exact grid.
+     */
+    private boolean isExactGrid() {
+        return this.exactAspectRatio > 0;
+    }
+
+    /**
+     * This function sets the grid of the rendering: "grid exact [aspect]" renders any number of columns
+     * over the image without padding, with cells of the given height to width ratio (1 by default), and
+     * "grid padded" goes back to square tiles over the image padded to a power of two.
+     * @param words the grid and optionally the aspect ratio.
+     * @throws IOException if the grid or the aspect ratio is not valid.
+     */
+    private void setGrid(String[] words) throws IOException {
+        String grid = "";
+        if (words.length != 1) {
+            grid = words[1];
+        }
+        if (grid.equalsIgnoreCase("exact")) {
+            double aspectRatio = 1;
+            if (words.length > 2) {
+                try {
+                    aspectRatio = Double.parseDouble(words[2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(e);
+                }
+                if (!(aspectRatio > 0)) {
+                    throw new IOException();
+                }
+            }
+            this.exactAspectRatio = aspectRatio;
+        } else if (grid.equalsIgnoreCase("padded")) {
+            // the padded grid needs a power of two within the boundaries of the padded image
+            int paddedWidth = this.imageSource.getPaddedWidth();
+            int minCharsInRow = Math.max(1, paddedWidth / this.imageSource.getPaddedHeight());
+            int power = Integer.highestOneBit(this.resolution);
+            this.resolution = Math.max(minCharsInRow, Math.min(power, paddedWidth));
+            this.exactAspectRatio = 0;
+        } else {
+            throw new IOException();
+        }
+    }
+
+    /**
+     * This function sets the viewport: "view x y width height" renders only that rectangle of the image,
+     * in pixels, and "view reset" goes back to the whole image.
+     * @param words the rectangle, or reset.
+     * @throws IOException if the rectangle is not valid or does not meet the image.
+     */
+    private void setViewport(String[] words) throws IOException {
+        if (words.length == 2 && words[1].equalsIgnoreCase("reset")) {
+            this.viewport = null;
+            return;
+        }
+        if (words.length != 5) {
+            throw new IOException();
+        }
+        int[] values = new int[4];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Integer.parseInt(words[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+        Viewport newViewport = new Viewport(values[0], values[1], values[2], values[3]);
+        if (values[2] < 1 || values[3] < 1 || !meetsImage(newViewport)) {
+            throw new IOException();
+        }
+        this.viewport = newViewport;
+    }
+
+    /**
+     * This function zooms the viewport in or out around its center.
+     * @param words in or out.
+     * @throws OutOfImageSizeException if the cells would be smaller than a pixel or larger than a tile.
+     * @throws IOException if there is no viewport or the direction is not valid.
+     */
+    private void zoomViewport(String[] words) throws IOException, OutOfImageSizeException {
+        String direction = "";
+        if (words.length != 1) {
+            direction = words[1];
+        }
+        if (this.viewport == null) {
+            throw new IOException();
+        }
+        int tileSize = this.imageSource.getPaddedWidth() / this.resolution;
+        if (direction.equalsIgnoreCase("in")) {
+            if (tileSize / (this.viewport.getZoom() * 2) < 1) {
+                throw new OutOfImageSizeException();
+            }
+            this.viewport = this.viewport.zoomIn();
+        } else if (direction.equalsIgnoreCase("out")) {
+            if (this.viewport.getZoom() == 1) {
+                throw new OutOfImageSizeException();
+            }
+            this.viewport = this.viewport.zoomOut();
+        } else {
+            throw new IOException();
+        }
+    }
+
+    /**
+     * This function moves the viewport by whole cells, so the cells already computed are reused.
+     * @param words the number of cells to move right and down, negative to move left and up.
+     * @throws OutOfImageSizeException if the viewport would leave the image.
+     * @throws IOException if there is no viewport or the offsets are not valid.
+     */
+    private void panViewport(String[] words) throws IOException, OutOfImageSizeException {
+        if (this.viewport == null || words.length != 3) {
+            throw new IOException();
+        }
+        int cellSize = this.viewport.getCellSize(this.imageSource.getPaddedWidth() / this.resolution);
+        Viewport newViewport;
+        try {
+            newViewport = this.viewport.pan(Integer.parseInt(words[1]) * cellSize,
+                    Integer.parseInt(words[2]) * cellSize);
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+        if (!meetsImage(newViewport)) {
+            throw new OutOfImageSizeException();
+        }
+        this.viewport = newViewport;
+    }
+
+    /**
+     * This function checks whether a viewport shows at least one pixel of the image.
+     * @param viewport the viewport.
+     * @return true if the viewport and the image overlap.
+     */
+    private boolean meetsImage(Viewport viewport) {
+        return viewport.getX() < this.imageSource.getWidth() && viewport.getY() < this.imageSource.getHeight()
+                && viewport.getX() + viewport.getWidth() > 0 && viewport.getY() + viewport.getHeight() > 0;
+    }
+
     /**
      * This function sets the rounding method.
      * @param words the new rounding method.
@@ -259,22 +926,17 @@ public class Shell {
         if (words.length != 1) {
             newRound = words[1];
         }
-        if (newRound.equalsIgnoreCase("abs")) {
-            this.subImgCharMatcher.setRoundSubMatcher("abs");
-            this.round = "abs";
-        } else if (newRound.equalsIgnoreCase("up")) {
-            this.subImgCharMatcher.setRoundSubMatcher("up");
-            this.round = "up";
-        } else if (newRound.equalsIgnoreCase("down")) {
-            this.subImgCharMatcher.setRoundSubMatcher("down");
-            this.round = "down";
-        } else {
+        RoundMode roundMode = RoundMode.fromName(newRound);
+        if (roundMode == null) {
             throw new IOException();
         }
+        this.subImgCharMatcher.setRoundSubMatcher(roundMode);
+        this.round = roundMode;
     }
 
     /**
-     * This function sets the output method.
+     * This function sets the output method. "output binary" overwrites out.asf with every render, and
+     * "output binary seq" appends every render to it as a frame of a sequence.
      * @param words the new output method.
      * @throws IOException if the output method is not valid.
      */
@@ -283,22 +945,80 @@ public class Shell {
         if (words.length != 1) {
             output = words[1];
         }
+        if (words.length == 3 && output.equalsIgnoreCase("binary") && words[2].equalsIgnoreCase("seq")) {
+            this.output = new BinaryAsciiOutput("out.asf", true, this::describeRender);
+            return;
+        }
+        if (words.length > 2) {
+            throw new IOException();
+        }
         if (output.equalsIgnoreCase("console")) {
             ConsoleAsciiOutput consoleOut = new ConsoleAsciiOutput();
             this.output = consoleOut;
         } else if (output.equalsIgnoreCase("html")) {
             HtmlAsciiOutput htmlOut = new HtmlAsciiOutput("out.html", "Courier New");
             this.output = htmlOut;
+        } else if (output.equalsIgnoreCase("binary")) {
+            this.output = new BinaryAsciiOutput("out.asf", false, this::describeRender);
         } else {
             throw new IOException();
         }
     }
 
+    /**
+     * This function sends the next renders to an output, in place of the output chosen with the output
+     * command.
+     * @param output the output.
+     */
+    void setAsciiOutput(AsciiOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * This function describes the parameters of the current render, to be stored with binary frames.
+     * @return the resolution, rounding method and charset.
+     */
+    private String describeRender() {
+        StringBuilder charset = new StringBuilder();
+        for (char c : this.subImgCharMatcher.getCharset()) {
+            charset.append(c);
+        }
+        String description = "res=" + this.resolution + ";round=" + this.round + ";charset=" + charset;
+        return this.dither == null ? description : description + ";dither=" + this.dither;
+    }
+
+    /**
+     * This function re-emits a frame of a binary frame file to the current output, without running the
+     * algorithm again.
+     * @param words the file name and optionally the index of the frame, the first frame by default.
+     * @throws IOException if the file or the frame index is not valid.
+     */
+    private void replay(String[] words) throws IOException {
+        if (words.length < 2 || words.length > 3) {
+            throw new IOException();
+        }
+        int frame = 0;
+        if (words.length == 3) {
+            try {
+                frame = Integer.parseInt(words[2]);
+            } catch (NumberFormatException e) {
+                throw new IOException(e);
+            }
+        }
+        try (BinaryAsciiReader reader = new BinaryAsciiReader(words[1])) {
+            reader.emit(frame, this.output);
+        }
+    }
+
     /**
      * This function is the main function of the program. It creates a new shell and runs it.
      * @param args the arguments.
      */
     public static void main(String[] args){
+        // the shell never opens a window, and headless AWT starts faster when a char has to be drawn
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
         Shell shell = new Shell();
         try {
             shell.run(args[0]);
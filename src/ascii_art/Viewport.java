@@ -0,0 +1,94 @@
+package ascii_art;
+
+/**
+ * A rectangle of the image to render, in pixels of the image, and the zoom it is rendered at. At zoom 1
+ * the cells are the tiles of the full render at the current resolution; every zoom in halves the cells,
+ * so the same region is rendered with twice as many characters in each direction.
+ * Viewports are immutable, panning and zooming return a new viewport.
+ */
+public class Viewport {
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final int zoom;
+
+    /**
+     * Constructor for a viewport at zoom 1.
+     * @param x the column of the left edge of the rectangle.
+     * @param y the row of the top edge of the rectangle.
+     * @param width the width of the rectangle.
+     * @param height the height of the rectangle.
+     */
+    public Viewport(int x, int y, int width, int height) {
+        this(x, y, width, height, 1);
+    }
+
+    private Viewport(int x, int y, int width, int height, int zoom) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.zoom = zoom;
+    }
+
+    /**
+     * Returns the viewport moved by some pixels.
+     * @param dx the pixels to move right, negative to move left.
+     * @param dy the pixels to move down, negative to move up.
+     * @return the moved viewport.
+     */
+    public Viewport pan(int dx, int dy) {
+        return new Viewport(x + dx, y + dy, width, height, zoom);
+    }
+
+    /**
+     * Returns the viewport zoomed in around its center: the rectangle is halved and the cells are
+     * halved, so the output keeps about the same number of characters.
+     * @return the zoomed viewport.
+     */
+    public Viewport zoomIn() {
+        int newWidth = Math.max(1, width / 2);
+        int newHeight = Math.max(1, height / 2);
+        return new Viewport(x + (width - newWidth) / 2, y + (height - newHeight) / 2, newWidth, newHeight,
+                zoom * 2);
+    }
+
+    /**
+     * Returns the viewport zoomed out around its center: the rectangle is doubled and the cells are
+     * doubled.
+     * @return the zoomed viewport.
+     */
+    public Viewport zoomOut() {
+        return new Viewport(x - width / 2, y - height / 2, width * 2, height * 2, Math.max(1, zoom / 2));
+    }
+
+    /**
+     * Returns the size of the cells of this viewport.
+     * @param tileSize the size of the tiles of the full render.
+     * @return the size of the cells in pixels, at least 1.
+     */
+    public int getCellSize(int tileSize) {
+        return Math.max(1, tileSize / zoom);
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getZoom() {
+        return zoom;
+    }
+}
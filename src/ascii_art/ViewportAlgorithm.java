@@ -0,0 +1,188 @@
+package ascii_art;
+
+import ascii_art.exceptions.RenderCancelledException;
+import image.Image;
+import image.ImageSource;
+import image.SubImages;
+import image.TileCache;
+import image_char_matching.CharMatcherSnapshot;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * this class runs the ascii art algorithm on the viewport of an image only. The cells are laid on the
+ * same grid as the tiles of the padded image, so only the cells inside the viewport are computed, the
+ * cells already in the tile cache of the image are reused, and only the rectangle of the image under the
+ * missing cells is decoded.
+ */
+public class ViewportAlgorithm {
+    private static final int MAX_RGB = 255;
+    private static final double WHITE_BRIGHTNESS = Image.white(1, 1).getGrey(0, 0) / MAX_RGB;
+
+    private final ImageSource source;
+    private final int resolution;
+    private final CharMatcherSnapshot charMatcher;
+    private final Viewport viewport;
+    private final RenderStats stats;
+    private RenderMonitor monitor;
+
+    /**
+     * constructor for the class that set the values.
+     * @param source the image we want to run the algorithm on.
+     * @param resolution the resolution of the full render, which sets the cells at zoom 1.
+     * @param charset the snapshot of the set of chars and the wanted round method.
+     * @param viewport the rectangle and zoom to render.
+     */
+    public ViewportAlgorithm(ImageSource source, int resolution, CharMatcherSnapshot charset,
+                             Viewport viewport) {
+        this.source = source;
+        this.resolution = resolution;
+        this.charMatcher = charset;
+        this.viewport = viewport;
+        this.stats = new RenderStats();
+        this.monitor = new RenderMonitor();
+    }
+
+    /**
+     * Set the monitor of the run, which may cancel it or give it a deadline.
+     * @param monitor the monitor.
+     */
+    public void setMonitor(RenderMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Returns the counters of the last run.
+     * @return the stats.
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * This function runs the algorithm on the cells of the viewport.
+     * @return the ascii art of the viewport. If the deadline of the monitor passed, either only the rows
+     * finished by then or every row with the missing cells sampled from a single pixel.
+     * @throws IOException if the image could not be read.
+     * @throws RenderCancelledException if the monitor cancelled the run.
+     */
+    public char[][] run() throws IOException, RenderCancelledException {
+        long start = System.nanoTime();
+        int cellSize = viewport.getCellSize(source.getPaddedWidth() / resolution);
+        int left = viewport.getX() + source.getPaddingLeft();
+        int top = viewport.getY() + source.getPaddingTop();
+        int firstCol = Math.max(0, Math.floorDiv(left, cellSize));
+        int firstRow = Math.max(0, Math.floorDiv(top, cellSize));
+        int endCol = Math.min(source.getPaddedWidth() / cellSize,
+                Math.floorDiv(left + viewport.getWidth() + cellSize - 1, cellSize));
+        int endRow = Math.min(source.getPaddedHeight() / cellSize,
+                Math.floorDiv(top + viewport.getHeight() + cellSize - 1, cellSize));
+        int rows = Math.max(1, endRow - firstRow);
+        int cols = Math.max(1, endCol - firstCol);
+
+        // Take the cached cells and find the bounding box of the missing ones
+        TileCache cache = source.getTileCache();
+        double[][] brightness = new double[rows][cols];
+        boolean[][] missing = new boolean[rows][cols];
+        int minRow = Integer.MAX_VALUE, maxRow = -1, minCol = Integer.MAX_VALUE, maxCol = -1;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                Double cached = cache.get(cellSize, firstRow + i, firstCol + j);
+                if (cached != null) {
+                    brightness[i][j] = cached;
+                    stats.countCachedTile();
+                } else {
+                    missing[i][j] = true;
+                    minRow = Math.min(minRow, i);
+                    maxRow = Math.max(maxRow, i);
+                    minCol = Math.min(minCol, j);
+                    maxCol = Math.max(maxCol, j);
+                }
+            }
+        }
+
+        if (maxRow >= 0) {
+            // Decode only the part of the image under the missing cells, the rest is padding
+            int regionLeft = (firstCol + minCol) * cellSize - source.getPaddingLeft();
+            int regionTop = (firstRow + minRow) * cellSize - source.getPaddingTop();
+            int regionRight = (firstCol + maxCol + 1) * cellSize - source.getPaddingLeft();
+            int regionBottom = (firstRow + maxRow + 1) * cellSize - source.getPaddingTop();
+            Rectangle region = new Rectangle(regionLeft, regionTop, regionRight - regionLeft,
+                    regionBottom - regionTop).intersection(
+                    new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+            Image regionImage = region.isEmpty() ? null : source.getRegion(region);
+            SubImages subImages = new SubImages(cols, regionImage);
+            Rectangle cell = new Rectangle(cellSize, cellSize);
+
+            monitor.start(maxRow - minRow + 1);
+            for (int i = minRow; i <= maxRow; i++) {
+                for (int j = minCol; j <= maxCol; j++) {
+                    if (!missing[i][j]) {
+                        continue;
+                    }
+                    int tileTop = (firstRow + i) * cellSize - source.getPaddingTop() - region.y;
+                    int tileLeft = (firstCol + j) * cellSize - source.getPaddingLeft() - region.x;
+                    cell.setLocation(tileLeft, tileTop);
+                    if (regionImage == null || !cell.intersects(0, 0, region.width, region.height)) {
+                        // the cell is all padding
+                        brightness[i][j] = WHITE_BRIGHTNESS;
+                        stats.countUniformTile();
+                    } else {
+                        Image tile = regionImage.crop(tileTop, tileLeft, cellSize, cellSize);
+                        brightness[i][j] = subImages.calculateBrightnessImage(tile);
+                        stats.countTile();
+                    }
+                    cache.put(cellSize, firstRow + i, firstCol + j, brightness[i][j]);
+                    missing[i][j] = false;
+                }
+                // every row counts, but a stop after the last row has nothing left to cut or sample
+                boolean goOn = monitor.advance(1);
+                if (!goOn && i < maxRow) {
+                    if (monitor.isCancelled()) {
+                        throw new RenderCancelledException();
+                    }
+                    if (!monitor.isCoarseFallback()) {
+                        brightness = Arrays.copyOf(brightness, i + 1);
+                        break;
+                    }
+                    sampleMissing(brightness, missing, regionImage, cellSize, firstRow, firstCol, region);
+                    break;
+                }
+            }
+        }
+
+        char[][] asciiArt = AsciiArtAlgorithm.matchChars(brightness, charMatcher, stats);
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return asciiArt;
+    }
+
+    /**
+     * This function approximates every missing cell by the pixel at its center, after the deadline of the
+     * run. The sampled cells are not cached.
+     * @param brightness the brightness of the cells.
+     * @param missing the cells not computed yet.
+     * @param regionImage the decoded rectangle of the image, or null if it is all padding.
+     * @param cellSize the size of a cell in pixels.
+     * @param firstRow the row of the first cell in the grid of the padded image.
+     * @param firstCol the column of the first cell in the grid of the padded image.
+     * @param region the decoded rectangle, in pixels of the image.
+     */
+    private void sampleMissing(double[][] brightness, boolean[][] missing, Image regionImage, int cellSize,
+                               int firstRow, int firstCol, Rectangle region) {
+        for (int i = 0; i < brightness.length; i++) {
+            for (int j = 0; j < brightness[i].length; j++) {
+                if (!missing[i][j]) {
+                    continue;
+                }
+                int y = (firstRow + i) * cellSize + cellSize / 2 - source.getPaddingTop() - region.y;
+                int x = (firstCol + j) * cellSize + cellSize / 2 - source.getPaddingLeft() - region.x;
+                // the crop of the decoded rectangle is white outside it, like the padding
+                brightness[i][j] = regionImage == null ? WHITE_BRIGHTNESS
+                        : regionImage.crop(y, x, 1, 1).getGrey(0, 0) / MAX_RGB;
+                stats.countSampledTile();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ascii_art.exceptions;
+
+/**
+ * An exception that is thrown when the charset has too few characters to run the algorithm.
+ */
+public class CharsetTooSmallException extends Exception {
+
+    /**
+     * Constructor for the exception.
+     */
+    public CharsetTooSmallException() {
+        super("Did not execute. Charset is too small.");
+    }
+}
@@ -0,0 +1,14 @@
+package ascii_art.exceptions;
+
+/**
+ * An exception that is thrown when a render is cancelled before it finished.
+ */
+public class RenderCancelledException extends Exception {
+
+    /**
+     * Constructor for the exception.
+     */
+    public RenderCancelledException() {
+        super("Did not execute. Render was cancelled.");
+    }
+}
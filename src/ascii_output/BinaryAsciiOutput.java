@@ -0,0 +1,219 @@
+package ascii_output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to a compact binary frame file, that {@link BinaryAsciiReader} can map and
+ * re-emit to any other output without rendering the image again.
+ * <p>
+ * The file starts with the magic "ASCF", a version short and a flags byte. Every frame then holds its
+ * length in bytes, its rows and columns, a parameters string, a palette of the distinct chars of the frame
+ * and one encoded row after the other. A row is either 7-bit packed palette indices (when the palette has
+ * at most 128 chars) or run-length pairs of a varint run and a palette index, whichever is shorter.
+ * In sequence mode every call appends a frame, and the file ends with an index of the frame offsets
+ * followed by the frame count and the magic "ASCX".
+ */
+public class BinaryAsciiOutput implements AsciiOutput {
+    static final int MAGIC = 0x41534346; // "ASCF"
+    static final int INDEX_MAGIC = 0x41534358; // "ASCX"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Byte.BYTES;
+    static final byte FLAG_INDEX = 1;
+    static final byte ROW_PACKED = 0;
+    static final byte ROW_RLE = 1;
+    static final int MAX_PACKED_PALETTE = 128;
+    static final int PACKED_BITS = 7;
+
+    private final String filename;
+    private final boolean sequence;
+    private final Supplier<String> parameters;
+    private final List<Long> frameOffsets;
+    private long endOfFrames;
+
+    /**
+     * Constructor for the output.
+     * @param filename the file to write.
+     * @param sequence true to append every frame and keep an index of the frames, false to overwrite the
+     *                 file with a single frame on every call.
+     * @param parameters supplies the render parameters stored with every frame.
+     */
+    public BinaryAsciiOutput(String filename, boolean sequence, Supplier<String> parameters) {
+        this.filename = filename;
+        this.sequence = sequence;
+        this.parameters = parameters;
+        this.frameOffsets = new ArrayList<>();
+        this.endOfFrames = HEADER_SIZE;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        byte[] frame;
+        try {
+            frame = encodeFrame(chars, parameters.get());
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to encode a frame for \"%s\"", filename));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            if (!sequence || frameOffsets.isEmpty()) {
+                frameOffsets.clear();
+                endOfFrames = HEADER_SIZE;
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putShort(VERSION).put(sequence ? FLAG_INDEX : 0).flip();
+                writeFully(channel, header, 0);
+            }
+            frameOffsets.add(endOfFrames);
+            writeFully(channel, ByteBuffer.wrap(frame), endOfFrames);
+            endOfFrames += frame.length;
+
+            long end = endOfFrames;
+            if (sequence) {
+                ByteBuffer index = ByteBuffer.allocate(frameOffsets.size() * Long.BYTES + 2 * Integer.BYTES);
+                for (long offset : frameOffsets) {
+                    index.putLong(offset);
+                }
+                index.putInt(frameOffsets.size()).putInt(INDEX_MAGIC).flip();
+                writeFully(channel, index, end);
+                end += index.capacity();
+            }
+            channel.truncate(end);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Writes a whole buffer at a position of a channel.
+     * @param channel the channel to write to.
+     * @param buffer the bytes to write.
+     * @param position the position in the channel.
+     * @throws IOException if the write failed.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Encodes a frame, including its length prefix.
+     * @param chars the chars of the frame.
+     * @param parameters the render parameters of the frame.
+     * @return the encoded frame.
+     * @throws IOException if the frame could not be encoded.
+     */
+    static byte[] encodeFrame(char[][] chars, String parameters) throws IOException {
+        int rows = chars.length;
+        int cols = rows == 0 ? 0 : chars[0].length;
+
+        // Build the palette of the distinct chars, in order of appearance
+        Map<Character, Integer> palette = new LinkedHashMap<>();
+        for (char[] row : chars) {
+            for (char c : row) {
+                palette.putIfAbsent(c, palette.size());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0); // the length, filled below
+        data.writeInt(rows);
+        data.writeInt(cols);
+        byte[] parameterBytes = parameters.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(parameterBytes.length);
+        data.write(parameterBytes);
+        data.writeShort(palette.size());
+        for (char c : palette.keySet()) {
+            data.writeChar(c);
+        }
+
+        boolean wide = palette.size() > 0xFF;
+        int[] indices = new int[cols];
+        ByteArrayOutputStream rle = new ByteArrayOutputStream();
+        for (char[] row : chars) {
+            for (int x = 0; x < cols; x++) {
+                indices[x] = palette.get(row[x]);
+            }
+            rle.reset();
+            encodeRle(indices, wide, rle);
+            int packedSize = (cols * PACKED_BITS + Byte.SIZE - 1) / Byte.SIZE;
+            if (palette.size() <= MAX_PACKED_PALETTE && packedSize <= rle.size()) {
+                data.writeByte(ROW_PACKED);
+                writePacked(indices, data);
+            } else {
+                data.writeByte(ROW_RLE);
+                rle.writeTo(data);
+            }
+        }
+        data.flush();
+
+        byte[] frame = bytes.toByteArray();
+        ByteBuffer.wrap(frame).putInt(frame.length - Integer.BYTES);
+        return frame;
+    }
+
+    /**
+     * Writes palette indices of a row as run-length pairs.
+     * @param indices the palette indices of the row.
+     * @param wide true if the indices take two bytes.
+     * @param out the stream to write to.
+     */
+    private static void encodeRle(int[] indices, boolean wide, ByteArrayOutputStream out) {
+        int x = 0;
+        while (x < indices.length) {
+            int run = 1;
+            while (x + run < indices.length && indices[x + run] == indices[x]) {
+                run++;
+            }
+            // varint of the run, 7 bits per byte
+            int value = run;
+            while (value >= 0x80) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+            if (wide) {
+                out.write(indices[x] >>> Byte.SIZE);
+            }
+            out.write(indices[x]);
+            x += run;
+        }
+    }
+
+    /**
+     * Writes palette indices of a row packed in 7 bits each.
+     * @param indices the palette indices of the row, all lower than 128.
+     * @param out the stream to write to.
+     * @throws IOException if the write failed.
+     */
+    private static void writePacked(int[] indices, DataOutputStream out) throws IOException {
+        int buffer = 0;
+        int bits = 0;
+        for (int index : indices) {
+            buffer = (buffer << PACKED_BITS) | index;
+            bits += PACKED_BITS;
+            if (bits >= Byte.SIZE) {
+                bits -= Byte.SIZE;
+                out.writeByte(buffer >>> bits);
+                buffer &= (1 << bits) - 1;
+            }
+        }
+        if (bits > 0) {
+            out.writeByte(buffer << (Byte.SIZE - bits));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ascii_output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the frame files written by {@link BinaryAsciiOutput}. Every frame is memory-mapped on demand and
+ * decoded straight from the mapping, so re-emitting an archived render costs reading the file and nothing
+ * more.
+ */
+public class BinaryAsciiReader implements Closeable {
+    private final FileChannel channel;
+    private final long[] frameOffsets;
+
+    /**
+     * Constructor for the reader. Reads the header and the frame index, or scans the frame lengths when
+     * the file has no index.
+     * @param filename the frame file.
+     * @throws IOException if the file could not be read or is not a frame file.
+     */
+    public BinaryAsciiReader(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < BinaryAsciiOutput.HEADER_SIZE) {
+                throw new IOException("Not a frame file: " + filename);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryAsciiOutput.HEADER_SIZE);
+            if (header.getInt() != BinaryAsciiOutput.MAGIC || header.getShort() != BinaryAsciiOutput.VERSION) {
+                throw new IOException("Not a frame file: " + filename);
+            }
+            boolean indexed = (header.get() & BinaryAsciiOutput.FLAG_INDEX) != 0;
+            this.frameOffsets = indexed ? readIndex(size, filename) : scanFrames(size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the frame index at the end of the file.
+     * @param size the size of the file.
+     * @param filename the name of the file, for the error message.
+     * @return the offsets of the frames.
+     * @throws IOException if the index is corrupted.
+     */
+    private long[] readIndex(long size, String filename) throws IOException {
+        int trailerSize = 2 * Integer.BYTES;
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - trailerSize, trailerSize);
+        int count = trailer.getInt();
+        if (trailer.getInt() != BinaryAsciiOutput.INDEX_MAGIC || count < 0
+                || (long) count * Long.BYTES > size - trailerSize) {
+            throw new IOException("Corrupted frame index: " + filename);
+        }
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+                size - trailerSize - (long) count * Long.BYTES, (long) count * Long.BYTES);
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = index.getLong();
+        }
+        return offsets;
+    }
+
+    /**
+     * Finds the frames of a file without an index by following their length prefixes.
+     * @param size the size of the file.
+     * @return the offsets of the frames.
+     * @throws IOException if the file could not be read.
+     */
+    private long[] scanFrames(long size) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        long offset = BinaryAsciiOutput.HEADER_SIZE;
+        while (offset + Integer.BYTES <= size) {
+            offsets.add(offset);
+            int length = channel.map(FileChannel.MapMode.READ_ONLY, offset, Integer.BYTES).getInt();
+            offset += Integer.BYTES + length;
+        }
+        long[] result = new long[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of frames in the file.
+     * @return the number of frames.
+     */
+    public int getFrameCount() {
+        return frameOffsets.length;
+    }
+
+    /**
+     * Maps a frame, positioned after its length prefix.
+     * @param frame the index of the frame.
+     * @return the mapped frame.
+     * @throws IOException if the frame could not be mapped.
+     */
+    private MappedByteBuffer mapFrame(int frame) throws IOException {
+        if (frame < 0 || frame >= frameOffsets.length) {
+            throw new IOException("No such frame: " + frame);
+        }
+        long offset = frameOffsets[frame];
+        int length = channel.map(FileChannel.MapMode.READ_ONLY, offset, Integer.BYTES).getInt();
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset + Integer.BYTES, length);
+    }
+
+    /**
+     * Returns the render parameters stored with a frame.
+     * @param frame the index of the frame.
+     * @return the parameters string.
+     * @throws IOException if the frame could not be read.
+     */
+    public String getParameters(int frame) throws IOException {
+        ByteBuffer buffer = mapFrame(frame);
+        buffer.position(2 * Integer.BYTES);
+        return readParameters(buffer);
+    }
+
+    /**
+     * Reads the parameters string at the position of a buffer.
+     * @param buffer the buffer.
+     * @return the parameters string.
+     */
+    private static String readParameters(ByteBuffer buffer) {
+        byte[] parameters = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(parameters);
+        return new String(parameters, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a frame.
+     * @param frame the index of the frame.
+     * @return the chars of the frame.
+     * @throws IOException if the frame could not be read.
+     */
+    public char[][] readFrame(int frame) throws IOException {
+        ByteBuffer buffer = mapFrame(frame);
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        readParameters(buffer);
+        char[] palette = new char[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = buffer.getChar();
+        }
+        boolean wide = palette.length > 0xFF;
+
+        char[][] chars = new char[rows][cols];
+        try {
+            for (int y = 0; y < rows; y++) {
+                byte encoding = buffer.get();
+                if (encoding == BinaryAsciiOutput.ROW_PACKED) {
+                    readPacked(buffer, palette, chars[y]);
+                } else if (encoding == BinaryAsciiOutput.ROW_RLE) {
+                    readRle(buffer, palette, wide, chars[y]);
+                } else {
+                    throw new IOException("Unknown row encoding: " + encoding);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted frame: " + frame, e);
+        }
+        return chars;
+    }
+
+    /**
+     * Decodes a row of 7-bit packed palette indices.
+     * @param buffer the buffer positioned at the row.
+     * @param palette the palette of the frame.
+     * @param row the row to fill.
+     */
+    private static void readPacked(ByteBuffer buffer, char[] palette, char[] row) {
+        int value = 0;
+        int bits = 0;
+        int mask = (1 << BinaryAsciiOutput.PACKED_BITS) - 1;
+        for (int x = 0; x < row.length; x++) {
+            if (bits < BinaryAsciiOutput.PACKED_BITS) {
+                value = (value << Byte.SIZE) | (buffer.get() & 0xFF);
+                bits += Byte.SIZE;
+            }
+            bits -= BinaryAsciiOutput.PACKED_BITS;
+            row[x] = palette[(value >>> bits) & mask];
+            value &= (1 << bits) - 1;
+        }
+    }
+
+    /**
+     * Decodes a row of run-length pairs.
+     * @param buffer the buffer positioned at the row.
+     * @param palette the palette of the frame.
+     * @param wide true if the palette indices take two bytes.
+     * @param row the row to fill.
+     */
+    private static void readRle(ByteBuffer buffer, char[] palette, boolean wide, char[] row) {
+        int x = 0;
+        while (x < row.length) {
+            int run = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get() & 0xFF;
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            int index = buffer.get() & 0xFF;
+            if (wide) {
+                index = (index << Byte.SIZE) | (buffer.get() & 0xFF);
+            }
+            for (int end = x + run; x < end; x++) {
+                row[x] = palette[index];
+            }
+        }
+    }
+
+    /**
+     * Re-emits a frame to an output, without rendering the image again.
+     * @param frame the index of the frame.
+     * @param output the output to emit to.
+     * @throws IOException if the frame could not be read.
+     */
+    public void emit(int frame, AsciiOutput output) throws IOException {
+        output.out(readFrame(frame));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,11 +1,20 @@
 package ascii_output;
 
+import image_char_matching.BrailleTable;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Output a 2D array of chars to the console.
  * @author Dan Nirel
  */public class ConsoleAsciiOutput implements AsciiOutput{
     @Override
     public void out(char[][] chars) {
+        if (isBraille(chars)) {
+            outBraille(chars);
+            return;
+        }
         for (int y = 0; y < chars.length ; y++) {
             for (int x = 0; x < chars[y].length; x++) {
                 System.out.print(chars[y][x] + " ");
@@ -13,4 +22,26 @@ package ascii_output;
             System.out.println();
         }
     }
+
+    /**
+     * Check whether the chars are braille cells, by their first char.
+     * @param chars the chars to output.
+     * @return true for braille cells.
+     */
+    private static boolean isBraille(char[][] chars) {
+        return chars.length > 0 && chars[0].length > 0 && BrailleTable.isBraille(chars[0][0]);
+    }
+
+    /**
+     * Output braille cells in UTF-8 whatever the platform encoding is, without spaces between the cells
+     * since every cell already has two columns of dots.
+     * @param chars the braille cells.
+     */
+    private static void outBraille(char[][] chars) {
+        PrintStream utf8 = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        for (char[] row : chars) {
+            utf8.println(row);
+        }
+        utf8.flush();
+    }
 }
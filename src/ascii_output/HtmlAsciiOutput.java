@@ -3,10 +3,12 @@ package ascii_output;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 /**
- * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Output a 2D array of chars to an HTML file viewable in a web browser. The file is written in UTF-8, so
+ * braille cells are kept as they are.
  * @author Dan Nirel
  */
 public class HtmlAsciiOutput implements AsciiOutput {
@@ -23,10 +25,11 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8))) {
             writer.write(String.format(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
+                "<head><meta charset=\"UTF-8\"></head>\n"+
                 "<body style=\""+
                     "\tCOLOR:#000000;"+
                     "\tTEXT-ALIGN:center;"+
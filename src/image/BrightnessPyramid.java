@@ -0,0 +1,103 @@
+package image;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The grey sums of the tiles of a padded image at every tile size computed so far. The padded image and
+ * its tiles are powers of two, so every tile is exactly four tiles of half its size, and a coarser grid is
+ * the 2x2 sum of a finer one: once a fine grid is computed from the pixels, every coarser grid costs one
+ * pass over the cells instead of one over the pixels. The sums are exact grey units, so a derived grid
+ * holds the same sums, whatever grids were computed before it; their brightness is that of the tiles up
+ * to {@link SubImages#brightnessError(long)}. Grids with more than {@link #MAX_TILES} tiles are not kept,
+ * which bounds the pyramid to a few megabytes whatever the size of the image.
+ */
+public class BrightnessPyramid {
+    /** The largest number of tiles of a grid the pyramid keeps. */
+    public static final int MAX_TILES = 1 << 18;
+
+    private final Map<Integer, long[][]> levels;
+
+    /**
+     * Constructor for an empty pyramid.
+     */
+    public BrightnessPyramid() {
+        this.levels = new HashMap<>();
+    }
+
+    /**
+     * Returns the grey sums of the tiles of a size, from the grid of that size or by summing the nearest
+     * finer grid. The grids derived on the way are stored too.
+     * @param tileSize the size of the tiles in pixels, a power of two.
+     * @return the sum of the grey units of every tile, which must not be changed, or null if no grid of
+     * that size or finer is known.
+     */
+    public synchronized long[][] getGreyUnits(int tileSize) {
+        long[][] sums = levels.get(tileSize);
+        if (sums == null) {
+            int finer = tileSize / 2;
+            while (finer >= 1 && !levels.containsKey(finer)) {
+                finer /= 2;
+            }
+            if (finer < 1) {
+                return null;
+            }
+            sums = levels.get(finer);
+            for (int size = finer * 2; size <= tileSize; size *= 2) {
+                if (sums.length < 2 || sums[0].length < 2) {
+                    return null;
+                }
+                sums = reduce(sums);
+                levels.put(size, sums);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Checks whether the pyramid keeps a grid of some number of tiles.
+     * @param rows the number of rows of tiles.
+     * @param cols the number of columns of tiles.
+     * @return true if a grid of that many tiles is kept.
+     */
+    public boolean accepts(int rows, int cols) {
+        return (long) rows * cols <= MAX_TILES;
+    }
+
+    /**
+     * Stores the grey sums of the tiles of a size, computed from the pixels. A grid the pyramid does not
+     * accept is ignored.
+     * @param tileSize the size of the tiles in pixels, a power of two.
+     * @param greyUnits the sum of the grey units of every tile of the padded image, which must not be
+     *                  changed after.
+     */
+    public synchronized void putGreyUnits(int tileSize, long[][] greyUnits) {
+        if (greyUnits.length > 0 && accepts(greyUnits.length, greyUnits[0].length)) {
+            levels.put(tileSize, greyUnits);
+        }
+    }
+
+    /**
+     * Drops every grid, after the image changed.
+     */
+    public synchronized void clear() {
+        levels.clear();
+    }
+
+    /**
+     * This function sums every 2x2 block of tiles into a tile of twice the size.
+     * @param sums the grey sums of the tiles.
+     * @return the grey sums of the tiles twice as large.
+     */
+    private static long[][] reduce(long[][] sums) {
+        long[][] reduced = new long[sums.length / 2][sums[0].length / 2];
+        for (int i = 0; i < reduced.length; i++) {
+            long[] top = sums[2 * i];
+            long[] bottom = sums[2 * i + 1];
+            for (int j = 0; j < reduced[i].length; j++) {
+                reduced[i][j] = top[2 * j] + top[2 * j + 1] + bottom[2 * j] + bottom[2 * j + 1];
+            }
+        }
+        return reduced;
+    }
+}
@@ -0,0 +1,164 @@
+package image;
+
+import java.util.Arrays;
+
+/**
+ * A grid of cells over an image of any size, without padding. The image is split into the requested
+ * number of columns and as many rows as the cell aspect ratio gives, and the cells tile the image exactly,
+ * so their edges may fall inside pixels. The brightness of a cell is the average of the pixels it covers,
+ * every pixel weighted by the area of the overlap.
+ */
+public class ExactGrid {
+    private static final int MAX_RGB = 255;
+
+    private final Image image;
+    private final int rows;
+    private final int cols;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int[] firstCol;
+    private final double[] firstColWeight;
+    private final int[] firstRow;
+    private final double[] firstRowWeight;
+
+    /**
+     * Constructor for the grid.
+     * @param image the image, not padded.
+     * @param cols the number of columns, between 1 and the width of the image.
+     * @param aspectRatio the height of a cell divided by its width, 1 for square cells.
+     */
+    public ExactGrid(Image image, int cols, double aspectRatio) {
+        this.image = image;
+        this.cols = Math.max(1, Math.min(cols, image.getWidth()));
+        double width = (double) image.getWidth() / this.cols;
+        int rows = (int) Math.round(image.getHeight() / (width * aspectRatio));
+        this.rows = Math.max(1, Math.min(rows, image.getHeight()));
+        this.cellWidth = width;
+        this.cellHeight = (double) image.getHeight() / this.rows;
+        this.firstCol = new int[image.getWidth()];
+        this.firstColWeight = new double[image.getWidth()];
+        splitPixels(image.getWidth(), cellWidth, this.cols, firstCol, firstColWeight);
+        this.firstRow = new int[image.getHeight()];
+        this.firstRowWeight = new double[image.getHeight()];
+        splitPixels(image.getHeight(), cellHeight, this.rows, firstRow, firstRowWeight);
+    }
+
+    /**
+     * Returns the number of rows of the grid.
+     * @return the number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns of the grid.
+     * @return the number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Returns the height of a cell.
+     * @return the height of a cell in pixels, at least 1.
+     */
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    /**
+     * This function calculates the brightness of every cell of the grid. It reads every pixel once, in
+     * rows, and splits it between at most two cells in each direction, since the cells are at least one
+     * pixel wide and high.
+     * @return the brightness of the cells, between 0 and 1.
+     */
+    public double[][] calculateBrightness() {
+        return calculateBrightness(0, rows);
+    }
+
+    /**
+     * This function calculates the brightness of a band of rows of the grid. The pixel rows on the edges
+     * of the band are read by the bands on both sides, every other pixel once; every cell gets the same
+     * value as when the whole grid is calculated at once.
+     * @param firstBandRow the first row of the band.
+     * @param endBandRow the row after the last row of the band.
+     * @return the brightness of the cells of the band, between 0 and 1.
+     */
+    public double[][] calculateBrightness(int firstBandRow, int endBandRow) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // one pixel more on every side, in case rounding put a pixel of the band in the next cell
+        int firstY = Math.max(0, (int) (firstBandRow * cellHeight) - 1);
+        int endY = Math.min(height, (int) Math.ceil(endBandRow * cellHeight) + 1);
+
+        double[][] sums = new double[endBandRow - firstBandRow][cols];
+        double[] rowSums = new double[cols];
+        for (int y = firstY; y < endY; y++) {
+            int row = firstRow[y];
+            double weight = firstRowWeight[y];
+            boolean inBand = row >= firstBandRow && row < endBandRow;
+            boolean nextInBand = weight < 1 && row + 1 >= firstBandRow && row + 1 < endBandRow;
+            if (!inBand && !nextInBand) {
+                continue;
+            }
+            Arrays.fill(rowSums, 0);
+            for (int x = 0; x < width; x++) {
+                double grey = image.getGrey(y, x);
+                int col = firstCol[x];
+                rowSums[col] += grey * firstColWeight[x];
+                if (firstColWeight[x] < 1) {
+                    rowSums[col + 1] += grey * (1 - firstColWeight[x]);
+                }
+            }
+            for (int col = 0; col < cols; col++) {
+                if (inBand) {
+                    sums[row - firstBandRow][col] += rowSums[col] * weight;
+                }
+                if (nextInBand) {
+                    sums[row + 1 - firstBandRow][col] += rowSums[col] * (1 - weight);
+                }
+            }
+        }
+
+        double cellArea = cellWidth * cellHeight;
+        for (double[] row : sums) {
+            for (int col = 0; col < cols; col++) {
+                row[col] = row[col] / cellArea / MAX_RGB;
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * This function approximates the brightness of a cell by the pixel at its center, without reading the
+     * rest of the cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the brightness of the center pixel, between 0 and 1.
+     */
+    public double sampleBrightness(int row, int col) {
+        int y = Math.min(image.getHeight() - 1, (int) ((row + 0.5) * cellHeight));
+        int x = Math.min(image.getWidth() - 1, (int) ((col + 0.5) * cellWidth));
+        return image.getGrey(y, x) / MAX_RGB;
+    }
+
+    /**
+     * Finds, for every pixel along one axis, the first cell it overlaps and the part of the pixel that
+     * falls in that cell. The rest of the pixel falls in the next cell.
+     * @param pixels the number of pixels along the axis.
+     * @param cellSize the size of a cell in pixels, at least 1.
+     * @param cells the number of cells along the axis.
+     * @param firstCell filled with the first cell of every pixel.
+     * @param firstWeight filled with the part of every pixel in its first cell.
+     */
+    private static void splitPixels(int pixels, double cellSize, int cells, int[] firstCell,
+                                    double[] firstWeight) {
+        for (int p = 0; p < pixels; p++) {
+            int cell = Math.min(cells - 1, (int) (p / cellSize));
+            double cellEnd = (cell + 1) * cellSize;
+            firstCell[p] = cell;
+            firstWeight[p] = cell == cells - 1 ? 1 : Math.min(1, cellEnd - p);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A pixel store that keeps the pixels on the heap as a 2D array of colors.
+ */
+class HeapPixelStore implements PixelStore {
+    private final Color[][] pixelArray;
+
+    /**
+     * Constructor for the store.
+     * @param pixelArray the pixels, indexed by row and then by column.
+     */
+    HeapPixelStore(Color[][] pixelArray) {
+        this.pixelArray = pixelArray;
+    }
+
+    @Override
+    public Color getPixel(int row, int col) {
+        return pixelArray[row][col];
+    }
+
+    @Override
+    public double getGrey(int row, int col) {
+        Color color = pixelArray[row][col];
+        return PixelStore.grey(color.getRed(), color.getGreen(), color.getBlue());
+    }
+
+    @Override
+    public int getGreyUnits(int row, int col) {
+        Color color = pixelArray[row][col];
+        return PixelStore.greyUnits(color.getRed(), color.getGreen(), color.getBlue());
+    }
+}
@@ -1,18 +1,27 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
  * @author Dan Nirel
  */
-public class Image {
+public class Image implements Closeable {
+    /** Images with more pixels than this are loaded into a memory-mapped store instead of the heap. */
+    public static final long HEAP_PIXEL_LIMIT = 1L << 24;
+    /** The grey value of a white pixel in grey units, see {@link #getGreyUnits(int, int)}. */
+    public static final int WHITE_GREY_UNITS = PixelStore.greyUnits(255, 255, 255);
 
-    private final Color[][] pixelArray;
+    private final PixelStore pixelStore;
     private final int width;
     private final int height;
 
@@ -22,20 +31,126 @@ public class Image {
         height = im.getHeight();
 
 
-        pixelArray = new Color[height][width];
+        Color[][] pixelArray = new Color[height][width];
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
                 pixelArray[i][j]=new Color(im.getRGB(j, i));
             }
         }
+        pixelStore = new HeapPixelStore(pixelArray);
     }
 
     public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+        this(new HeapPixelStore(pixelArray), width, height);
+    }
+
+    Image(PixelStore pixelStore, int width, int height) {
+        this.pixelStore = pixelStore;
         this.width = width;
         this.height = height;
     }
 
+    /**
+     * Returns an image where every pixel is white, without storing any pixel.
+     * @param width the width of the image.
+     * @param height the height of the image.
+     * @return the white image.
+     */
+    public static Image white(int width, int height) {
+        PixelStore empty = new HeapPixelStore(new Color[0][0]);
+        return new Image(new OffsetPixelStore(empty, 0, 0, 0, 0), width, height);
+    }
+
+    /**
+     * Loads an image, keeping the decoded pixels on the heap for normal images and in a memory-mapped
+     * temporary file for images larger than {@link #HEAP_PIXEL_LIMIT} pixels.
+     * @param filename the image file.
+     * @return the loaded image.
+     * @throws IOException if the image could not be read.
+     */
+    public static Image load(String filename) throws IOException {
+        Dimension size = readSize(filename);
+        if ((long) size.width * size.height > HEAP_PIXEL_LIMIT) {
+            return mapped(filename, false);
+        }
+        return new Image(filename);
+    }
+
+    /**
+     * Loads an image into a memory-mapped temporary file, outside of the heap.
+     * @param filename the image file.
+     * @param luminanceOnly true to keep only the luminance of every pixel in one byte, which takes a
+     *                      quarter of the space but rounds the grey values.
+     * @return the loaded image.
+     * @throws IOException if the image could not be read.
+     */
+    public static Image mapped(String filename, boolean luminanceOnly) throws IOException {
+        Dimension size = readSize(filename);
+        return new Image(new MappedPixelStore(filename, luminanceOnly), size.width, size.height);
+    }
+
+    /**
+     * Reads the size of an image from its header, without decoding the pixels.
+     * @param filename the image file.
+     * @return the width and height of the image.
+     * @throws IOException if the image could not be read.
+     */
+    public static Dimension readSize(String filename) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input, filename);
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes only a rectangle of an image. Readers that support source regions skip the pixels outside
+     * of it, so a small region of a huge image never has the whole image in memory.
+     * @param filename the image file.
+     * @param region the rectangle to decode, in pixels of the image.
+     * @return the decoded rectangle, as an image of the size of the rectangle.
+     * @throws IOException if the image could not be read.
+     */
+    public static Image loadRegion(String filename, Rectangle region) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input, filename);
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                BufferedImage im = reader.read(0, param);
+                Color[][] pixelArray = new Color[im.getHeight()][im.getWidth()];
+                for (int i = 0; i < im.getHeight(); i++) {
+                    for (int j = 0; j < im.getWidth(); j++) {
+                        pixelArray[i][j] = new Color(im.getRGB(j, i));
+                    }
+                }
+                return new Image(pixelArray, im.getWidth(), im.getHeight());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns a reader for the image format of an input.
+     * @param input the input stream of the image.
+     * @param filename the name of the image, for the error message.
+     * @return the reader.
+     * @throws IOException if there is no reader for the format.
+     */
+    static ImageReader getReader(ImageInputStream input, String filename) throws IOException {
+        Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return readers.next();
+    }
+
     public int getWidth() {
         return width;
     }
@@ -45,17 +160,72 @@ public class Image {
     }
 
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return pixelStore.getPixel(x, y);
+    }
+
+    /**
+     * Returns the grey value of a pixel, between 0 and 255. Reading the grey value does not create a
+     * color, so the brightness code should prefer it over {@link #getPixel(int, int)}.
+     * @param x the row of the pixel.
+     * @param y the column of the pixel.
+     * @return the grey value of the pixel.
+     */
+    public double getGrey(int x, int y) {
+        return pixelStore.getGrey(x, y);
+    }
+
+    /**
+     * Returns the grey value of a pixel in grey units: ten thousand times the grey value, as an exact
+     * integer. Sums of grey units are exact, so the brightness of a tile is the same whether its pixels
+     * are summed directly or through the sums of smaller tiles.
+     * @param x the row of the pixel.
+     * @param y the column of the pixel.
+     * @return the grey value of the pixel, between 0 and {@link #WHITE_GREY_UNITS}.
+     */
+    public int getGreyUnits(int x, int y) {
+        return pixelStore.getGreyUnits(x, y);
+    }
+
+    /**
+     * Returns a view of a rectangle of this image, without copying pixels. Pixels of the rectangle that
+     * fall outside the decoded pixels are white.
+     * @param x the row of the top left corner of the rectangle, may be negative.
+     * @param y the column of the top left corner of the rectangle, may be negative.
+     * @param width the width of the rectangle.
+     * @param height the height of the rectangle.
+     * @return the view.
+     */
+    public Image crop(int x, int y, int width, int height) {
+        PixelStore view;
+        if (pixelStore instanceof OffsetPixelStore) {
+            view = ((OffsetPixelStore) pixelStore).offset(x, y);
+        } else {
+            view = new OffsetPixelStore(pixelStore, this.width, this.height, x, y);
+        }
+        return new Image(view, width, height);
+    }
+
+    /**
+     * Releases the storage of the image: the temporary file of an image loaded into a memory-mapped
+     * store. Heap images and views made with {@link #crop(int, int, int, int)} hold nothing to release,
+     * but the views of a closed image must not be read anymore.
+     * @throws IOException if the storage could not be released.
+     */
+    @Override
+    public void close() throws IOException {
+        if (pixelStore instanceof Closeable) {
+            ((Closeable) pixelStore).close();
+        }
     }
 
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
+        // Initialize BufferedImage from the pixel store.
+        BufferedImage bufferedImage = new BufferedImage(width, height,
                 BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
+        // Set each pixel of the BufferedImage to the color from the store.
+        for (int x = 0; x < height; x++) {
+            for (int y = 0; y < width; y++) {
+                bufferedImage.setRGB(y, x, pixelStore.getPixel(x, y).getRGB());
             }
         }
         File outputfile = new File(fileName+".jpeg");
@@ -0,0 +1,223 @@
+package image;
+
+import java.awt.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An image file and everything kept alongside it between renders. Only the header is read up front; the
+ * pixels are decoded the first time a render needs them, either all of them or only a rectangle.
+ */
+public class ImageSource implements Closeable {
+    private final String filename;
+    private final int width;
+    private final int height;
+    private final int paddedWidth;
+    private final int paddedHeight;
+    private final TileCache tileCache;
+    private final BrightnessPyramid brightnessPyramid;
+    private Image image;
+    private Image paddedImage;
+    private UniformityIndex uniformityIndex;
+    private TileChecksums checksums;
+
+    /**
+     * Constructor for the source. Reads the size of the image, without decoding it.
+     * @param filename the image file.
+     * @throws IOException if the image could not be read.
+     */
+    public ImageSource(String filename) throws IOException {
+        this.filename = filename;
+        Dimension size = Image.readSize(filename);
+        this.width = size.width;
+        this.height = size.height;
+        this.paddedWidth = PaddingImage.getClosesPowerOf2(width);
+        this.paddedHeight = PaddingImage.getClosesPowerOf2(height);
+        this.tileCache = new TileCache();
+        this.brightnessPyramid = new BrightnessPyramid();
+    }
+
+    /**
+     * Returns the name of the image file.
+     * @return the file name.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Returns the width of the image.
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the image once padded to a power of two.
+     * @return the padded width in pixels.
+     */
+    public int getPaddedWidth() {
+        return paddedWidth;
+    }
+
+    /**
+     * Returns the height of the image once padded to a power of two.
+     * @return the padded height in pixels.
+     */
+    public int getPaddedHeight() {
+        return paddedHeight;
+    }
+
+    /**
+     * Returns the number of white columns added on the left of the image by the padding.
+     * @return the left padding in pixels.
+     */
+    public int getPaddingLeft() {
+        return (paddedWidth - width) / 2;
+    }
+
+    /**
+     * Returns the number of white rows added above the image by the padding.
+     * @return the top padding in pixels.
+     */
+    public int getPaddingTop() {
+        return (paddedHeight - height) / 2;
+    }
+
+    /**
+     * Returns the whole image, decoding it on the first call.
+     * @return the image.
+     * @throws IOException if the image could not be read.
+     */
+    public synchronized Image getImage() throws IOException {
+        if (image == null) {
+            image = Image.load(filename);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the image padded to a power of two, decoding it on the first call.
+     * @return the padded image.
+     * @throws IOException if the image could not be read.
+     */
+    public synchronized Image getPaddedImage() throws IOException {
+        if (paddedImage == null) {
+            paddedImage = new PaddingImage(getImage()).getPaddingImage();
+        }
+        return paddedImage;
+    }
+
+    /**
+     * Returns the uniformity index of the padded image, building it with the padded image.
+     * @return the uniformity index.
+     * @throws IOException if the image could not be read.
+     */
+    public synchronized UniformityIndex getUniformityIndex() throws IOException {
+        if (uniformityIndex == null) {
+            uniformityIndex = new UniformityIndex(getPaddedImage());
+        }
+        return uniformityIndex;
+    }
+
+    /**
+     * Returns a rectangle of the image. If the whole image is already decoded this is a view of it,
+     * otherwise only the rectangle is decoded.
+     * @param region the rectangle, in pixels of the image, inside the image.
+     * @return the rectangle, as an image of the size of the rectangle.
+     * @throws IOException if the image could not be read.
+     */
+    public synchronized Image getRegion(Rectangle region) throws IOException {
+        if (image != null) {
+            return image.crop(region.y, region.x, region.width, region.height);
+        }
+        return Image.loadRegion(filename, region);
+    }
+
+    /**
+     * Decodes the image file again after it changed on disk, and finds the blocks of pixels that changed
+     * by comparing checksums. The tile cache drops the tiles over the changed blocks and the uniformity
+     * index is updated over them only, so the next render recomputes only those tiles. The brightness
+     * pyramid is dropped, and the previous image is closed.
+     * @return the changed rectangles, in pixels of the padded image, empty if nothing changed, or null if
+     * the size of the image changed and a new source is needed.
+     * @throws IOException if the image could not be read.
+     */
+    public synchronized List<Rectangle> reload() throws IOException {
+        Image newImage = Image.load(filename);
+        if (newImage.getWidth() != width || newImage.getHeight() != height) {
+            newImage.close();
+            return null;
+        }
+        TileChecksums newChecksums = new TileChecksums(newImage);
+        List<Rectangle> changed;
+        if (image == null) {
+            // nothing was decoded before, so there is nothing to compare with
+            changed = new ArrayList<>(List.of(new Rectangle(0, 0, width, height)));
+        } else {
+            if (checksums == null) {
+                checksums = new TileChecksums(image);
+            }
+            changed = checksums.changedBlocks(newChecksums);
+        }
+        if (image != null) {
+            image.close();
+        }
+        image = newImage;
+        checksums = newChecksums;
+        paddedImage = null;
+        if (!changed.isEmpty()) {
+            brightnessPyramid.clear();
+        }
+        for (Rectangle rectangle : changed) {
+            rectangle.translate(getPaddingLeft(), getPaddingTop());
+            tileCache.invalidate(rectangle);
+        }
+        if (uniformityIndex != null) {
+            uniformityIndex.update(getPaddedImage(), changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Closes the decoded image, such as the temporary file of a memory-mapped image. The source decodes the
+     * image again if it is used afterwards.
+     * @throws IOException if the image could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (image != null) {
+            image.close();
+        }
+        image = null;
+        paddedImage = null;
+        uniformityIndex = null;
+    }
+
+    /**
+     * Returns the cache of tile brightness kept for this image.
+     * @return the tile cache.
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Returns the brightness of the tiles of the padded image at every tile size rendered so far.
+     * @return the brightness pyramid.
+     */
+    public BrightnessPyramid getBrightnessPyramid() {
+        return brightnessPyramid;
+    }
+}
@@ -0,0 +1,144 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A pixel store that spills the decoded pixels into a memory-mapped temporary file, so the size of the
+ * image is bounded by the disk and the address space instead of the heap. Pixels are addressed with
+ * 64-bit indices and the file is mapped in segments, since a single mapping is limited to 2GB.
+ * The store keeps either the full RGB value of every pixel, or only its luminance in a single byte.
+ */
+class MappedPixelStore implements PixelStore, Closeable {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final long PIXELS_PER_STRIPE = 1L << 22;
+
+    private final int width;
+    private final boolean luminanceOnly;
+    private final int bytesPerPixel;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Constructor for the store. Decodes the image in horizontal stripes, so only one stripe of decoded
+     * pixels is on the heap at a time.
+     * @param filename the image file to decode.
+     * @param luminanceOnly true to keep only the luminance of every pixel, false to keep the RGB value.
+     * @throws IOException if the image could not be decoded or the temporary file could not be mapped.
+     */
+    MappedPixelStore(String filename, boolean luminanceOnly) throws IOException {
+        this.luminanceOnly = luminanceOnly;
+        this.bytesPerPixel = luminanceOnly ? Byte.BYTES : Integer.BYTES;
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = Image.getReader(input, filename);
+            try {
+                reader.setInput(input, true, true);
+                this.width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                Path file = Files.createTempFile("ascii_art_pixels", ".bin");
+                file.toFile().deleteOnExit();
+                this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+                long size = (long) width * height * bytesPerPixel;
+                this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >> SEGMENT_SHIFT)];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = (long) i << SEGMENT_SHIFT;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                            Math.min(SEGMENT_SIZE, size - start));
+                }
+
+                int stripeHeight = (int) Math.max(1, Math.min(height, PIXELS_PER_STRIPE / width));
+                ImageReadParam param = reader.getDefaultReadParam();
+                for (int top = 0; top < height; top += stripeHeight) {
+                    int rows = Math.min(stripeHeight, height - top);
+                    param.setSourceRegion(new Rectangle(0, top, width, rows));
+                    BufferedImage stripe = reader.read(0, param);
+                    for (int i = 0; i < rows; i++) {
+                        for (int j = 0; j < width; j++) {
+                            put(top + i, j, stripe.getRGB(j, i));
+                        }
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Stores a pixel.
+     * @param row the row of the pixel.
+     * @param col the column of the pixel.
+     * @param rgb the RGB value of the pixel.
+     */
+    private void put(int row, int col, int rgb) {
+        long address = ((long) row * width + col) * bytesPerPixel;
+        MappedByteBuffer segment = segments[(int) (address >>> SEGMENT_SHIFT)];
+        int offset = (int) (address & SEGMENT_MASK);
+        if (luminanceOnly) {
+            double grey = PixelStore.grey((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            segment.put(offset, (byte) Math.round(grey));
+        } else {
+            segment.putInt(offset, rgb);
+        }
+    }
+
+    /**
+     * Reads the RGB value of a pixel. In luminance mode the value is a grey color.
+     * @param row the row of the pixel.
+     * @param col the column of the pixel.
+     * @return the RGB value of the pixel.
+     */
+    private int getRGB(int row, int col) {
+        long address = ((long) row * width + col) * bytesPerPixel;
+        MappedByteBuffer segment = segments[(int) (address >>> SEGMENT_SHIFT)];
+        int offset = (int) (address & SEGMENT_MASK);
+        if (luminanceOnly) {
+            int grey = segment.get(offset) & 0xFF;
+            return (grey << 16) | (grey << 8) | grey;
+        }
+        return segment.getInt(offset);
+    }
+
+    @Override
+    public Color getPixel(int row, int col) {
+        return new Color(getRGB(row, col));
+    }
+
+    @Override
+    public double getGrey(int row, int col) {
+        int rgb = getRGB(row, col);
+        return PixelStore.grey((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    @Override
+    public int getGreyUnits(int row, int col) {
+        int rgb = getRGB(row, col);
+        return PixelStore.greyUnits((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    /**
+     * Closes the temporary file. The store must not be read afterwards.
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
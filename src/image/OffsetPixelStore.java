@@ -0,0 +1,75 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A view of a rectangle of another pixel store. Pixels of the view that fall outside the source are
+ * white, so the same view serves both for cropping sub images and for padding an image, without copying
+ * any pixel.
+ */
+class OffsetPixelStore implements PixelStore {
+    private static final double WHITE_GREY = PixelStore.grey(
+            Color.WHITE.getRed(), Color.WHITE.getGreen(), Color.WHITE.getBlue());
+    private static final int WHITE_GREY_UNITS = PixelStore.greyUnits(
+            Color.WHITE.getRed(), Color.WHITE.getGreen(), Color.WHITE.getBlue());
+
+    private final PixelStore source;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int rowOffset;
+    private final int colOffset;
+
+    /**
+     * Constructor for the view.
+     * @param source the store to read from.
+     * @param sourceWidth the width of the source.
+     * @param sourceHeight the height of the source.
+     * @param rowOffset the row in the source of the first row of the view, may be negative.
+     * @param colOffset the column in the source of the first column of the view, may be negative.
+     */
+    OffsetPixelStore(PixelStore source, int sourceWidth, int sourceHeight, int rowOffset, int colOffset) {
+        this.source = source;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+    }
+
+    /**
+     * Returns a view of this view. The offsets are added up so reads never go through more than one view.
+     * @param rowOffset the row offset inside this view.
+     * @param colOffset the column offset inside this view.
+     * @return the new view.
+     */
+    OffsetPixelStore offset(int rowOffset, int colOffset) {
+        return new OffsetPixelStore(source, sourceWidth, sourceHeight,
+                this.rowOffset + rowOffset, this.colOffset + colOffset);
+    }
+
+    /**
+     * Checks whether a pixel of the view is inside the source.
+     * @param row the row in the view.
+     * @param col the column in the view.
+     * @return true if the pixel is inside the source.
+     */
+    private boolean inSource(int row, int col) {
+        int sourceRow = row + rowOffset;
+        int sourceCol = col + colOffset;
+        return sourceRow >= 0 && sourceRow < sourceHeight && sourceCol >= 0 && sourceCol < sourceWidth;
+    }
+
+    @Override
+    public Color getPixel(int row, int col) {
+        return inSource(row, col) ? source.getPixel(row + rowOffset, col + colOffset) : Color.WHITE;
+    }
+
+    @Override
+    public double getGrey(int row, int col) {
+        return inSource(row, col) ? source.getGrey(row + rowOffset, col + colOffset) : WHITE_GREY;
+    }
+
+    @Override
+    public int getGreyUnits(int row, int col) {
+        return inSource(row, col) ? source.getGreyUnits(row + rowOffset, col + colOffset) : WHITE_GREY_UNITS;
+    }
+}
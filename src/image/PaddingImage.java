@@ -1,7 +1,5 @@
 package image;
 
-import java.awt.*;
-
 /**
  * A class that creates a new image with padding.
  */
@@ -10,7 +8,8 @@ public class PaddingImage {
 
     /**
      * Constructor for the PaddingImage class. this function finds the closest power of 2 for the width and
-     * height of the image and pads the new image with white pixels around.
+     * height of the image and pads the new image with white pixels around. The padded image is a view of
+     * the original one, so the pixels are not copied.
      * @param image the image we want to pad.
      */
     public PaddingImage(Image image) {
@@ -22,24 +21,12 @@ public class PaddingImage {
             return;
         }
 
-        Color[][] pixelArray = new Color[closestPowerOfHeight][closestPowerOfWidth];
         int paddingWidth = (closestPowerOfWidth - image.getWidth()) / 2;
         int paddingHeight = (closestPowerOfHeight - image.getHeight()) / 2;
 
-        // Initialize the padded array with white pixels
-        for (int row = 0; row < closestPowerOfHeight; row++) {
-            for (int col = 0; col < closestPowerOfWidth; col++) {
-                pixelArray[row][col] = Color.WHITE;
-            }
-        }
-
-        // Copy the pixels of the original image into the padded array
-        for (int row = 0; row < image.getHeight(); row++) {
-            for (int col = 0; col < image.getWidth(); col++) {
-                pixelArray[row + paddingHeight][col + paddingWidth] = image.getPixel(row, col);
-            }
-        }
-        this.paddingImage = new Image(pixelArray, closestPowerOfWidth, closestPowerOfHeight);
+        // A view of the original image, white around it, so no pixel is copied
+        this.paddingImage = image.crop(-paddingHeight, -paddingWidth, closestPowerOfWidth,
+                closestPowerOfHeight);
     }
 
     /**
@@ -47,7 +34,7 @@ public class PaddingImage {
      * @param num int of the number we want to find the closest power of 2.
      * @return the closest power of 2.
      */
-    private int getClosesPowerOf2(int num) {
+    static int getClosesPowerOf2(int num) {
         int power = 1;
         while (power < num) {
             power *= 2;
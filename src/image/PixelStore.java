@@ -0,0 +1,65 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * The storage behind an {@link Image}. All the pixel reads of the package go through this accessor, so an
+ * image can keep its pixels on the heap, in a memory-mapped file or as a view of another store.
+ */
+interface PixelStore {
+    /** The weights of the red, green and blue channels in the grey value of a pixel. */
+    double RED_WEIGHT = 0.2126;
+    double GREEN_WEIGHT = 0.7152;
+    double BLUE_WEIGHT = 0.0722;
+    /** The same weights in ten-thousandths, so the grey value of a pixel in grey units is an exact integer. */
+    int RED_UNITS = 2126;
+    int GREEN_UNITS = 7152;
+    int BLUE_UNITS = 722;
+
+    /**
+     * Returns the color of a pixel.
+     * @param row the row of the pixel.
+     * @param col the column of the pixel.
+     * @return the color of the pixel.
+     */
+    Color getPixel(int row, int col);
+
+    /**
+     * Returns the grey value of a pixel, between 0 and 255.
+     * @param row the row of the pixel.
+     * @param col the column of the pixel.
+     * @return the grey value of the pixel.
+     */
+    double getGrey(int row, int col);
+
+    /**
+     * Returns the grey value of a pixel in grey units, ten thousand times the grey value and exact, so sums
+     * of them do not depend on the order they are added in.
+     * @param row the row of the pixel.
+     * @param col the column of the pixel.
+     * @return the grey value of the pixel, between 0 and 255 * 10000.
+     */
+    int getGreyUnits(int row, int col);
+
+    /**
+     * Calculates the grey value of a color given by its channels.
+     * @param red the red channel.
+     * @param green the green channel.
+     * @param blue the blue channel.
+     * @return the grey value, between 0 and 255.
+     */
+    static double grey(int red, int green, int blue) {
+        return red * RED_WEIGHT + green * GREEN_WEIGHT + blue * BLUE_WEIGHT;
+    }
+
+    /**
+     * Calculates the grey value of a color given by its channels, in grey units.
+     * @param red the red channel.
+     * @param green the green channel.
+     * @param blue the blue channel.
+     * @return the grey value, between 0 and 255 * 10000.
+     */
+    static int greyUnits(int red, int green, int blue) {
+        return red * RED_UNITS + green * GREEN_UNITS + blue * BLUE_UNITS;
+    }
+}
@@ -1,7 +1,5 @@
 package image;
 
-import java.awt.*;
-
 /**
  * A class that creates sub images of an image.
  */
@@ -41,25 +39,17 @@ public class SubImages {
     }
 
     /**
-     * This function extracts a sub image from the original image.
+     * This function extracts a sub image from the original image, as a view that does not copy pixels.
      * @param row the row of the sub image.
      * @param col the column of the sub image.
      * @param subImageSize the size of the sub image.
      * @return the sub image.
      */
     private Image extractSubImage(int row, int col, int subImageSize) {
-        Color[][] pixelsArray = new Color[subImageSize][subImageSize];
-
         int startX = row * subImageSize;
         int startY = col * subImageSize;
 
-        for (int i = 0; i < subImageSize; i++) {
-            for (int j = 0; j < subImageSize; j++) {
-                pixelsArray[i][j] = this.originalImage.getPixel(startX + i, startY + j);
-            }
-        }
-
-        return new Image(pixelsArray, subImageSize, subImageSize);
+        return this.originalImage.crop(startX, startY, subImageSize, subImageSize);
     }
 
     /**
@@ -71,14 +61,52 @@ public class SubImages {
         double sumGrey = 0.0;
         for (int i = 0; i < image.getHeight(); i++) {
             for (int j = 0; j < image.getWidth(); j++) {
-                double greyPixel = image.getPixel(i, j).getRed() * 0.2126 +
-                        image.getPixel(i, j).getGreen() * 0.7152 + image.getPixel(i, j).getBlue() * 0.0722;
-                sumGrey += greyPixel;
+                sumGrey += image.getGrey(i, j);
             }
         }
         return sumGrey / (image.getWidth() * image.getHeight()) / MAX_RGB;
     }
 
+    /**
+     * This function sums the grey units of the pixels of the image. The sum is exact, so it does not depend
+     * on the order the pixels are added in.
+     * @param image the image to sum.
+     * @return the sum of the grey units of every pixel.
+     */
+    public static long sumGreyUnits(Image image) {
+        long sumGrey = 0;
+        for (int i = 0; i < image.getHeight(); i++) {
+            for (int j = 0; j < image.getWidth(); j++) {
+                sumGrey += image.getGreyUnits(i, j);
+            }
+        }
+        return sumGrey;
+    }
+
+    /**
+     * This function turns a sum of grey units into a brightness between 0 and 1. It is the brightness
+     * {@link #calculateBrightnessImage(Image)} gives for the same pixels up to
+     * {@link #brightnessError(long)}, since that function adds rounded grey values one after the other.
+     * @param greyUnits the sum of the grey units of the pixels.
+     * @param pixels the number of pixels summed.
+     * @return the brightness.
+     */
+    public static double toBrightness(long greyUnits, long pixels) {
+        return greyUnits / ((double) pixels * Image.WHITE_GREY_UNITS);
+    }
+
+    /**
+     * This function bounds the difference between {@link #toBrightness(long, long)} and
+     * {@link #calculateBrightnessImage(Image)} for the same pixels: every addition of the sum of doubles
+     * rounds by at most one unit in the last place of the sum, and the grey values, the divisions and the
+     * exact sum add a few more. The bound is four times that.
+     * @param pixels the number of pixels.
+     * @return the largest difference between the two brightness values.
+     */
+    public static double brightnessError(long pixels) {
+        return (pixels + 8) * Math.ulp(1.0) * 2;
+    }
+
     /**
      * This function returns 2 array list of images.
      * @return the sub images.
@@ -0,0 +1,96 @@
+package image;
+
+import java.awt.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the brightness of square tiles of a padded image, keyed by the tile size and the
+ * position of the tile in the grid of that size. The least recently used tiles are dropped first.
+ */
+public class TileCache {
+    private static final int DEFAULT_CAPACITY = 1 << 20;
+    private static final int POSITION_BITS = 24;
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+    private final Map<Long, Double> tiles;
+
+    /**
+     * Constructor for the cache, holding up to about a million tiles.
+     */
+    public TileCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for the cache.
+     * @param capacity the maximal number of tiles kept.
+     */
+    public TileCache(int capacity) {
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Builds the key of a tile.
+     * @param tileSize the size of the tile in pixels.
+     * @param row the row of the tile in the grid.
+     * @param col the column of the tile in the grid.
+     * @return the key.
+     */
+    private static long key(int tileSize, int row, int col) {
+        return ((long) tileSize << (2 * POSITION_BITS)) | ((row & POSITION_MASK) << POSITION_BITS)
+                | (col & POSITION_MASK);
+    }
+
+    /**
+     * Returns the brightness of a tile, if it is in the cache.
+     * @param tileSize the size of the tile in pixels.
+     * @param row the row of the tile in the grid.
+     * @param col the column of the tile in the grid.
+     * @return the brightness, or null if the tile is not in the cache.
+     */
+    public synchronized Double get(int tileSize, int row, int col) {
+        return tiles.get(key(tileSize, row, col));
+    }
+
+    /**
+     * Stores the brightness of a tile.
+     * @param tileSize the size of the tile in pixels.
+     * @param row the row of the tile in the grid.
+     * @param col the column of the tile in the grid.
+     * @param brightness the brightness of the tile.
+     */
+    public synchronized void put(int tileSize, int row, int col, double brightness) {
+        tiles.put(key(tileSize, row, col), brightness);
+    }
+
+    /**
+     * Drops the tiles of every size that overlap a rectangle, after that part of the image changed.
+     * @param region the rectangle, in pixels of the padded image.
+     */
+    public synchronized void invalidate(Rectangle region) {
+        Iterator<Long> keys = tiles.keySet().iterator();
+        while (keys.hasNext()) {
+            long key = keys.next();
+            int tileSize = (int) (key >>> (2 * POSITION_BITS));
+            int row = (int) ((key >>> POSITION_BITS) & POSITION_MASK);
+            int col = (int) (key & POSITION_MASK);
+            if (region.intersects(col * tileSize, row * tileSize, tileSize, tileSize)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the tiles, after the image changed.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+    }
+}
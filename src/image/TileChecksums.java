@@ -0,0 +1,69 @@
+package image;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A checksum of the grey values of every aligned square block of an image. Comparing the checksums of two
+ * versions of the same image finds the blocks that changed, so only the tiles over them are rendered
+ * again. Only the grey values are summed since the renders never read anything else.
+ */
+public class TileChecksums {
+    /** The size of the blocks in pixels. */
+    public static final int BLOCK_SIZE = 16;
+
+    private static final long PRIME = 0x100000001B3L;
+
+    private final int width;
+    private final int height;
+    private final int blocksInRow;
+    private final long[] checksums;
+
+    /**
+     * Constructor for the checksums. Reads every pixel of the image once.
+     * @param image the image, not padded.
+     */
+    public TileChecksums(Image image) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.blocksInRow = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int blocksInColumn = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.checksums = new long[blocksInRow * blocksInColumn];
+        for (int i = 0; i < height; i++) {
+            int rowStart = (i / BLOCK_SIZE) * blocksInRow;
+            for (int j = 0; j < width; j++) {
+                int block = rowStart + j / BLOCK_SIZE;
+                checksums[block] = (checksums[block] ^ Double.doubleToLongBits(image.getGrey(i, j))) * PRIME;
+            }
+        }
+    }
+
+    /**
+     * This function finds the blocks whose checksum differs between two versions of an image.
+     * @param other the checksums of the other version, of the same size.
+     * @return the changed blocks, in pixels of the image, cut to the image. Blocks changed side by side in
+     * a row are merged into one rectangle.
+     */
+    public List<Rectangle> changedBlocks(TileChecksums other) {
+        List<Rectangle> changed = new ArrayList<>();
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        for (int block = 0; block < checksums.length; block++) {
+            if (checksums[block] == other.checksums[block]) {
+                continue;
+            }
+            int row = block / blocksInRow;
+            int col = block % blocksInRow;
+            Rectangle last = changed.isEmpty() ? null : changed.get(changed.size() - 1);
+            if (last != null && last.y == row * BLOCK_SIZE && last.x + last.width == col * BLOCK_SIZE) {
+                last.width += BLOCK_SIZE;
+            } else {
+                changed.add(new Rectangle(col * BLOCK_SIZE, row * BLOCK_SIZE, BLOCK_SIZE, BLOCK_SIZE));
+            }
+        }
+        for (Rectangle rectangle : changed) {
+            rectangle.setBounds(rectangle.intersection(bounds));
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,147 @@
+package image;
+
+import java.awt.*;
+import java.util.List;
+
+/**
+ * A summary of the minimum and maximum grey value of the aligned square blocks of a padded image, built
+ * once when the image is loaded. The blocks form a pyramid, every level twice as large as the one below,
+ * so whether any aligned power-of-two tile is uniform is a single lookup, without reading its pixels.
+ */
+public class UniformityIndex {
+    /** The size of the smallest blocks in pixels. Smaller tiles are never reported as uniform. */
+    public static final int BLOCK_SIZE = 8;
+
+    private Image image;
+    private final float[][] min;
+    private final float[][] max;
+    private final int[] blocksInRow;
+    private final int[] blocksInColumn;
+
+    /**
+     * Constructor for the index. Reads every pixel of the image once.
+     * @param image the padded image, whose width and height are powers of two.
+     */
+    public UniformityIndex(Image image) {
+        this.image = image;
+        int levels = 1;
+        int size = BLOCK_SIZE;
+        while (size * 2 <= image.getWidth() && size * 2 <= image.getHeight()) {
+            size *= 2;
+            levels++;
+        }
+        this.min = new float[levels][];
+        this.max = new float[levels][];
+        this.blocksInRow = new int[levels];
+        this.blocksInColumn = new int[levels];
+
+        int cols = Math.max(1, image.getWidth() / BLOCK_SIZE);
+        int rows = Math.max(1, image.getHeight() / BLOCK_SIZE);
+        for (int level = 0; level < levels; level++) {
+            blocksInRow[level] = cols;
+            blocksInColumn[level] = rows;
+            min[level] = new float[rows * cols];
+            max[level] = new float[rows * cols];
+            cols = Math.max(1, cols / 2);
+            rows = Math.max(1, rows / 2);
+        }
+        update(0, 0, blocksInColumn[0], blocksInRow[0]);
+    }
+
+    /**
+     * Updates the index after some rectangles of the image changed, reading only the pixels of the blocks
+     * under them.
+     * @param image the new padded image, of the same size.
+     * @param changed the changed rectangles, in pixels of the padded image.
+     */
+    public void update(Image image, List<Rectangle> changed) {
+        this.image = image;
+        for (Rectangle rectangle : changed) {
+            if (rectangle.isEmpty()) {
+                continue;
+            }
+            update(Math.max(0, rectangle.y / BLOCK_SIZE), Math.max(0, rectangle.x / BLOCK_SIZE),
+                    Math.min(blocksInColumn[0], (rectangle.y + rectangle.height - 1) / BLOCK_SIZE + 1),
+                    Math.min(blocksInRow[0], (rectangle.x + rectangle.width - 1) / BLOCK_SIZE + 1));
+        }
+    }
+
+    /**
+     * Computes the smallest blocks in a range from their pixels, and every larger block above them.
+     * @param firstRow the first row of smallest blocks.
+     * @param firstCol the first column of smallest blocks.
+     * @param endRow the row after the last row of smallest blocks.
+     * @param endCol the column after the last column of smallest blocks.
+     */
+    private void update(int firstRow, int firstCol, int endRow, int endCol) {
+        int cols = blocksInRow[0];
+        for (int row = firstRow; row < endRow; row++) {
+            for (int col = firstCol; col < endCol; col++) {
+                float low = Float.MAX_VALUE;
+                float high = -Float.MAX_VALUE;
+                for (int i = row * BLOCK_SIZE; i < Math.min(image.getHeight(), (row + 1) * BLOCK_SIZE); i++) {
+                    for (int j = col * BLOCK_SIZE; j < Math.min(image.getWidth(), (col + 1) * BLOCK_SIZE); j++) {
+                        float grey = (float) image.getGrey(i, j);
+                        low = Math.min(low, grey);
+                        high = Math.max(high, grey);
+                    }
+                }
+                min[0][row * cols + col] = low;
+                max[0][row * cols + col] = high;
+            }
+        }
+
+        // Every level is the 2x2 reduction of the level below
+        for (int level = 1; level < min.length; level++) {
+            int lowerCols = blocksInRow[level - 1];
+            cols = blocksInRow[level];
+            firstRow /= 2;
+            firstCol /= 2;
+            endRow = Math.min(blocksInColumn[level], (endRow + 1) / 2);
+            endCol = Math.min(cols, (endCol + 1) / 2);
+            for (int row = firstRow; row < endRow; row++) {
+                for (int col = firstCol; col < endCol; col++) {
+                    int a = (2 * row) * lowerCols + 2 * col;
+                    int b = a + lowerCols;
+                    min[level][row * cols + col] = Math.min(
+                            Math.min(min[level - 1][a], min[level - 1][a + 1]),
+                            Math.min(min[level - 1][b], min[level - 1][b + 1]));
+                    max[level][row * cols + col] = Math.max(
+                            Math.max(max[level - 1][a], max[level - 1][a + 1]),
+                            Math.max(max[level - 1][b], max[level - 1][b + 1]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether every pixel of a square tile has the same grey value. The tile must be aligned on its
+     * own size, as the tiles of the padded image are.
+     * @param row the row of the top left pixel of the tile.
+     * @param col the column of the top left pixel of the tile.
+     * @param size the size of the tile in pixels.
+     * @return true if the tile is known to be uniform, false if it is not or if it is too small, not a
+     * power of two or not aligned to be looked up.
+     */
+    public boolean isUniform(int row, int col, int size) {
+        if (size < BLOCK_SIZE || Integer.bitCount(size) != 1 || row % size != 0 || col % size != 0) {
+            return false;
+        }
+        int level = Integer.numberOfTrailingZeros(size / BLOCK_SIZE);
+        if (level >= min.length) {
+            return false;
+        }
+        int index = (row / size) * blocksInRow[level] + col / size;
+        return min[level][index] == max[level][index];
+    }
+
+    /**
+     * Returns the grey value of a uniform tile, between 0 and 255.
+     * @param row the row of the top left pixel of the tile.
+     * @param col the column of the top left pixel of the tile.
+     * @return the grey value of every pixel of the tile.
+     */
+    public double getUniformGrey(int row, int col) {
+        return image.getGrey(row, col);
+    }
+}
@@ -0,0 +1,57 @@
+package image_char_matching;
+
+/**
+ * A precomputed table of the Unicode braille characters. A braille cell has 2 columns and 4 rows of dots,
+ * and a mask of 8 bits selects the raised dots: bit (row * 2 + col) is the dot at that row and column.
+ * The table maps every one of the 256 masks to its code point, whose dot numbering is not row-major.
+ */
+public class BrailleTable {
+    /** The number of columns of dots in a braille cell. */
+    public static final int CELL_COLS = 2;
+    /** The number of rows of dots in a braille cell. */
+    public static final int CELL_ROWS = 4;
+
+    private static final char BRAILLE_BASE = '\u2800';
+    // the Unicode bit of the dot at (row, col), in row-major order
+    private static final int[] DOT_BITS = {0x01, 0x08, 0x02, 0x10, 0x04, 0x20, 0x40, 0x80};
+    private static final char[] TABLE = buildTable();
+
+    private BrailleTable() {
+    }
+
+    /**
+     * Build the table of the 256 masks.
+     * @return the braille character of every mask.
+     */
+    private static char[] buildTable() {
+        char[] table = new char[1 << DOT_BITS.length];
+        for (int mask = 0; mask < table.length; mask++) {
+            int bits = 0;
+            for (int dot = 0; dot < DOT_BITS.length; dot++) {
+                if ((mask & (1 << dot)) != 0) {
+                    bits |= DOT_BITS[dot];
+                }
+            }
+            table[mask] = (char) (BRAILLE_BASE + bits);
+        }
+        return table;
+    }
+
+    /**
+     * Get the braille character of a mask of raised dots.
+     * @param mask the raised dots, bit (row * 2 + col) for the dot at that row and column.
+     * @return the braille character.
+     */
+    public static char getChar(int mask) {
+        return TABLE[mask & 0xFF];
+    }
+
+    /**
+     * Check whether a character is a braille character.
+     * @param c the character.
+     * @return true if the character is in the Unicode braille block.
+     */
+    public static boolean isBraille(char c) {
+        return c >= BRAILLE_BASE && c < BRAILLE_BASE + TABLE.length;
+    }
+}
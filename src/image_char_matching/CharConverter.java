@@ -33,6 +33,14 @@ public class CharConverter {
         return matrix;
     }
 
+    /**
+     * Returns the name of the font the chars are drawn in, as it resolved on this host: the name of the
+     * font asked for, or of the font that stands in for it when it is not installed.
+     */
+    public static String getFontName() {
+        return new Font(FONT_NAME, Font.PLAIN, DEFAULT_PIXEL_RESOLUTION).getFontName();
+    }
+
     private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
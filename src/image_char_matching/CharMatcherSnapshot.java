@@ -0,0 +1,136 @@
+package image_char_matching;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An immutable, compiled view of a charset: the characters in ascending order, their normalized
+ * brightness and the rounding policy. A snapshot never changes after it is created, so it can be shared
+ * by any number of render threads without locking.
+ */
+public final class CharMatcherSnapshot {
+    /** Returned by {@link #getCharByQuantisedBrightness(double)} when the quantised table has no answer. */
+    public static final char NO_CHAR = '\0';
+    private static final int QUANTISATION_LEVELS = 1024;
+
+    private final char[] chars;
+    private final double[] brightness;
+    private final RoundMode round;
+    private final SortedSet<Character> charset;
+    private volatile char[] quantised;
+
+    /**
+     * Constructor for the snapshot. The arrays are owned by the snapshot and must not be changed later.
+     * @param chars the characters of the charset, in ascending order.
+     * @param brightness the normalized brightness of every character, in the same order.
+     * @param round the rounding policy.
+     */
+    CharMatcherSnapshot(char[] chars, double[] brightness, RoundMode round) {
+        this.chars = chars;
+        this.brightness = brightness;
+        this.round = round;
+        TreeSet<Character> set = new TreeSet<>();
+        for (char c : chars) {
+            set.add(c);
+        }
+        this.charset = Collections.unmodifiableSortedSet(set);
+    }
+
+    /**
+     * Get the character that is closest to the brightness value, if there is a two similar value
+     * the character with the lower ASCII value will be returned.
+     *
+     * @param brightness the brightness value to get the character for.
+     * @return the character that is closest to the brightness value.
+     */
+    public char getCharByImageBrightness(double brightness) {
+        char minChar = this.chars[0];
+        double minValue = this.round.distance(this.brightness[0], brightness);
+        // the characters are sorted, so a strict comparison keeps the lower ASCII value on ties.
+        for (int i = 1; i < this.chars.length; i++) {
+            double value = this.round.distance(this.brightness[i], brightness);
+            if (value < minValue) {
+                minValue = value;
+                minChar = this.chars[i];
+            }
+        }
+        return minChar;
+    }
+
+    /**
+     * Get the character of a brightness from a table of the brightness range split in equal buckets. The
+     * match only changes at a few points of the range, so a bucket whose two ends match the same character
+     * matches it everywhere and the table keeps it. Buckets that contain a change, and brightness values
+     * outside the range, have no answer and must go through {@link #getCharByImageBrightness(double)}.
+     *
+     * @param brightness the brightness value to get the character for.
+     * @return the character, or {@link #NO_CHAR} if the table has no answer for this brightness.
+     */
+    public char getCharByQuantisedBrightness(double brightness) {
+        if (!(brightness >= 0 && brightness <= 1)) {
+            return NO_CHAR;
+        }
+        char[] table = this.quantised;
+        if (table == null) {
+            // benign race: concurrent renders may build the same table twice
+            table = buildQuantisedTable();
+            this.quantised = table;
+        }
+        return table[Math.min(QUANTISATION_LEVELS - 1, (int) (brightness * QUANTISATION_LEVELS))];
+    }
+
+    /**
+     * Build the table of the characters of the brightness buckets.
+     * @return the table, with NO_CHAR for the buckets that contain a change of character.
+     */
+    private char[] buildQuantisedTable() {
+        char[] table = new char[QUANTISATION_LEVELS];
+        char low = getCharByImageBrightness(0);
+        for (int i = 0; i < QUANTISATION_LEVELS; i++) {
+            char high = getCharByImageBrightness((double) (i + 1) / QUANTISATION_LEVELS);
+            table[i] = low == high ? low : NO_CHAR;
+            low = high;
+        }
+        return table;
+    }
+
+    /**
+     * Get the normalized brightness of a character of the charset, the brightness its matches stand for.
+     * @param c the character.
+     * @return the normalized brightness, or NaN if the character is not in the charset.
+     */
+    public double getCharBrightness(char c) {
+        int index = Arrays.binarySearch(this.chars, c);
+        return index < 0 ? Double.NaN : this.brightness[index];
+    }
+
+    /**
+     * Returns a snapshot with the same charset and a different rounding policy.
+     * @param round the new rounding policy.
+     * @return the new snapshot, or this one if the policy did not change.
+     */
+    public CharMatcherSnapshot withRound(RoundMode round) {
+        if (round == this.round) {
+            return this;
+        }
+        return new CharMatcherSnapshot(this.chars, this.brightness, round);
+    }
+
+    /**
+     * Get the charset.
+     * @return an unmodifiable sorted view of the charset.
+     */
+    public SortedSet<Character> getCharset() {
+        return this.charset;
+    }
+
+    /**
+     * Get the rounding policy.
+     * @return the rounding policy.
+     */
+    public RoundMode getRound() {
+        return this.round;
+    }
+}
@@ -0,0 +1,136 @@
+package image_char_matching;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * The number of pixels every printable ascii char covers when {@link CharConverter} draws it, precomputed
+ * and shipped as the resource glyph_brightness.txt next to this class; any other char is still drawn. The
+ * table is used as shipped, so a charset inside the printable range never touches AWT: resolving the font
+ * alone costs about half of drawing the chars. The table records the font it was generated for; with the
+ * system property {@value #VERIFY_PROPERTY} set to true it is used only where the font resolves to that
+ * one, and on a host with another font every char is drawn until the table is generated again with the
+ * main of this class.
+ */
+public class GlyphTable {
+    /** The first char of the table. */
+    public static final int MIN_CHAR = 32;
+    /** The last char of the table. */
+    public static final int MAX_CHAR = 126;
+
+    /** The system property that checks the font of the table against the font of this host. */
+    public static final String VERIFY_PROPERTY = "image_char_matching.GlyphTable.verify";
+
+    private static final String RESOURCE = "glyph_brightness.txt";
+    private static final String FONT_KEY = "font ";
+    private static final String SIZE_KEY = "size ";
+    private static final int[] PIXELS = load();
+
+    /**
+     * This function returns the number of pixels a char covers, from the table.
+     * @param c the char.
+     * @return the number of pixels out of the whole square of the char, or -1 if the char is not in the
+     * table or the table could not be read.
+     */
+    public static int getPixels(char c) {
+        if (PIXELS == null || c < MIN_CHAR || c > MAX_CHAR) {
+            return -1;
+        }
+        return PIXELS[c - MIN_CHAR];
+    }
+
+    /**
+     * This function counts the pixels a char covers by drawing it.
+     * @param c the char.
+     * @return the number of pixels out of the whole square of the char.
+     */
+    static int countPixels(char c) {
+        int pixels = 0;
+        for (boolean[] row : CharConverter.convertToBoolArray(c)) {
+            for (boolean pixel : row) {
+                if (pixel) {
+                    pixels++;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * This function reads the table, and checks it was generated for the font of this host if
+     * {@value #VERIFY_PROPERTY} is set. The table starts with the name of its font and the size of its
+     * squares, then every line holds the code of a char and its number of pixels; lines starting with # are
+     * comments. Every reason not to use the table is logged.
+     * @return the pixels of every char of the table, or null if the resource is missing or incomplete, or
+     * of another font when the font is checked.
+     */
+    private static int[] load() {
+        InputStream resource = GlyphTable.class.getResourceAsStream(RESOURCE);
+        if (resource == null) {
+            Logger.getGlobal().warning(String.format("Missing \"%s\", every char is drawn", RESOURCE));
+            return null;
+        }
+        int[] pixels = new int[MAX_CHAR - MIN_CHAR + 1];
+        int found = 0;
+        String font = null;
+        int size = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource,
+                StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith(FONT_KEY)) {
+                    font = line.substring(FONT_KEY.length());
+                    continue;
+                }
+                if (line.startsWith(SIZE_KEY)) {
+                    size = Integer.parseInt(line.substring(SIZE_KEY.length()));
+                    continue;
+                }
+                String[] words = line.split(" ");
+                int c = Integer.parseInt(words[0]);
+                if (words.length != 2 || c < MIN_CHAR || c > MAX_CHAR) {
+                    found = -1;
+                    break;
+                }
+                pixels[c - MIN_CHAR] = Integer.parseInt(words[1]);
+                found++;
+            }
+        } catch (IOException | NumberFormatException e) {
+            found = -1;
+        }
+        if (found != pixels.length || font == null || size != CharConverter.DEFAULT_PIXEL_RESOLUTION) {
+            Logger.getGlobal().warning(String.format("Failed to read \"%s\", every char is drawn", RESOURCE));
+            return null;
+        }
+        if (Boolean.getBoolean(VERIFY_PROPERTY)) {
+            String hostFont = CharConverter.getFontName();
+            if (!hostFont.equals(font)) {
+                Logger.getGlobal().info(String.format("\"%s\" is of the font %s but this host draws %s, "
+                        + "every char is drawn", RESOURCE, font, hostFont));
+                return null;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Prints the table for the font of this host, in the format of the resource.
+     * @param args not used.
+     */
+    public static void main(String[] args) {
+        System.out.println("# pixels of every printable ascii char drawn by CharConverter");
+        System.out.println(FONT_KEY + CharConverter.getFontName());
+        System.out.println(SIZE_KEY + CharConverter.DEFAULT_PIXEL_RESOLUTION);
+        for (char c = MIN_CHAR; c <= MAX_CHAR; c++) {
+            System.out.println((int) c + " " + countPixels(c));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package image_char_matching;
+
+/**
+ * The rounding policies used when matching an image brightness to a character brightness.
+ */
+public enum RoundMode {
+    /** Pick the character whose brightness is closest to the image brightness. */
+    ABS,
+    /** Pick the closest character whose brightness is not lower than the image brightness. */
+    UP,
+    /** Pick the closest character whose brightness is not higher than the image brightness. */
+    DOWN;
+
+    /**
+     * This function parses a rounding method as typed in the shell.
+     * @param name the name of the rounding method (abs, up or down), case insensitive.
+     * @return the matching round mode, or null if the name is not valid.
+     */
+    public static RoundMode fromName(String name) {
+        for (RoundMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calculate the distance between a character brightness and an image brightness according to this
+     * rounding policy.
+     * @param charBrightness the normalized brightness of the character.
+     * @param brightness the brightness of the image.
+     * @return the distance, or Double.MAX_VALUE if the character is not allowed by the policy.
+     */
+    double distance(double charBrightness, double brightness) {
+        switch (this) {
+            case UP:
+                return charBrightness >= brightness ? charBrightness - brightness : Double.MAX_VALUE;
+            case DOWN:
+                return charBrightness <= brightness ? brightness - charBrightness : Double.MAX_VALUE;
+            default:
+                return Math.abs(charBrightness - brightness);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
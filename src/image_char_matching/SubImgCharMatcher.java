@@ -1,64 +1,44 @@
 package image_char_matching;
 
 import java.util.HashMap;
+import java.util.SortedSet;
 import java.util.TreeSet;
 /**
- * A class that matches a character to a brightness value.
+ * A class that matches a character to a brightness value. The matcher is the mutable builder of the
+ * charset: every change compiles a new immutable {@link CharMatcherSnapshot} and publishes it
+ * copy-on-write, so renders that hold a snapshot keep a consistent charset while it is being edited.
  */
 public class SubImgCharMatcher {
     //attributes
-    private HashMap<Character, Double> charBrightnessMap;
     private final TreeSet<Character> charset;
     private final HashMap<Character, Double> brightnessCache;
-    private String round;
+    private RoundMode round;
+    private volatile CharMatcherSnapshot snapshot;
 
     //constants
-    private static final int DEFAULT_PIXEL_RESOLUTION = 16;
     private static final int NUM_OF_PIXELS = 256;
 
     /**
-     * Constructor for SubImgCharMatcher. Calls the initialize function.Saves the characters from the array
-     * to a set and creates a map to
-     *      * save characters with their brightness values.
+     * Constructor for SubImgCharMatcher. Saves the characters from the array to a set and compiles the
+     * first snapshot with their brightness values.
      * @param charset the charset to use.
      */
     public SubImgCharMatcher(char[] charset) {
-        this.round = "abs"; //default value
+        this.round = RoundMode.ABS; //default value
         this.charset = new TreeSet<>();
         this.brightnessCache = new HashMap<>(); // Initialize the cache
-        initializeBrightnessMap(charset);
-    }
-
-    /**
-     * Initialize the brightness map and find the min and max values of brightness, and try to find the
-     * brightness val if there is.
-     * @param charset the charset to use.
-     */
-    private void initializeBrightnessMap(char[] charset) {
-        double[] charsBrightness = new double[charset.length];
-        double minBrightness = 1;
-        double maxBrightness = 0;
-
-        // Update the character set and calculate brightness values
-        for (int i = 0; i < charset.length; i++) {
-            this.charset.add(charset[i]);
-            charsBrightness[i] = getCachedBrightness(charset[i]);
-            if (charsBrightness[i] < minBrightness) {
-                minBrightness = charsBrightness[i];
-            }
-            if (charsBrightness[i] > maxBrightness) {
-                maxBrightness = charsBrightness[i];
-            }
+        for (char c : charset) {
+            this.charset.add(c);
         }
-        this.charBrightnessMap = createBrightnessMap(this.charset.toArray(new Character[0]), charsBrightness,
-                minBrightness, maxBrightness);
+        publishSnapshot();
     }
 
-
     /**
-     * Update the brightness map and find the min and max values of brightness.
+     * Compile the current charset into a new snapshot, normalizing the brightness values between the
+     * minimum and the maximum brightness, and publish it.
      */
-    private void updateBrightnessMap() {
+    private void publishSnapshot() {
+        char[] chars = new char[this.charset.size()];
         double[] charsBrightness = new double[this.charset.size()];
         double minBrightness = 1;
         double maxBrightness = 0;
@@ -66,8 +46,8 @@ public class SubImgCharMatcher {
 
         // Calculate brightness for each character and find min/max values
         for (char c : this.charset) {
-//            double brightness = getBrightness(c);
             double brightness = getCachedBrightness(c);
+            chars[index] = c;
             charsBrightness[index] = brightness;
             if (brightness < minBrightness) {
                 minBrightness = brightness;
@@ -78,29 +58,11 @@ public class SubImgCharMatcher {
             index++;
         }
 
-        // Update the brightness map with normalized values
-        this.charBrightnessMap = createBrightnessMap(this.charset.toArray(new Character[0]), charsBrightness,
-                minBrightness, maxBrightness);
-    }
-
-
-    /**
-     * Create a map of characters and their brightness values.
-     *
-     * @param charset the charset to use.
-     * @param charsBrightness the brightness values of the characters.
-     * @param minBrightness the minimum brightness value.
-     * @param maxBrightness the maximum brightness value.
-     * @return the map of characters and their brightness values.
-     */
-    private HashMap<Character, Double> createBrightnessMap(Character[] charset, double[] charsBrightness,
-                                                           double minBrightness, double maxBrightness) {
-        this.charBrightnessMap = new HashMap<>();
+        // Normalize the brightness values
         for (int i = 0; i < charsBrightness.length; i++) {
-            double newCharBrightness = (charsBrightness[i] - minBrightness) / (maxBrightness - minBrightness);
-            charBrightnessMap.put(charset[i], newCharBrightness);
+            charsBrightness[i] = (charsBrightness[i] - minBrightness) / (maxBrightness - minBrightness);
         }
-        return charBrightnessMap;
+        this.snapshot = new CharMatcherSnapshot(chars, charsBrightness, this.round);
     }
 
     /**
@@ -117,47 +79,38 @@ public class SubImgCharMatcher {
     }
 
     /**
-     * Get the brightness of a character from the charSet.
+     * Get the brightness of a character from the charSet. Printable ascii chars come from the precomputed
+     * {@link GlyphTable}, so only other chars start AWT to draw them.
      *
      * @param cFromCharSet the character to get the brightness of.
      * @return the normalized brightness value of the character.
      */
     private double getBrightness(char cFromCharSet) {
-        boolean[][] array = CharConverter.convertToBoolArray(cFromCharSet);
-        int sumTrue = 0;
-        for (int i = 0; i < DEFAULT_PIXEL_RESOLUTION; i++) {
-            for (int j = 0; j < DEFAULT_PIXEL_RESOLUTION; j++) {
-                if (array[i][j]) {
-                    sumTrue++;
-                }
-            }
+        int sumTrue = GlyphTable.getPixels(cFromCharSet);
+        if (sumTrue < 0) {
+            sumTrue = GlyphTable.countPixels(cFromCharSet);
         }
         return (double) sumTrue / NUM_OF_PIXELS;
     }
 
     /**
-     * Get the character that is closest to the brightness value, if there is a two similar value
-     * the character with the lower ASCII value will be returned.
+     * Get the character that is closest to the brightness value in the current snapshot.
      *
      * @param brightness the brightness value to get the character for.
      * @return the character that is closest to the brightness value.
      */
     public char getCharByImageBrightness(double brightness) {
-        // get the first element of the tree.
-        char minChar = this.charset.first();
-        double minValue = calculateRoundVal(minChar, brightness);
-        for (Character c : charBrightnessMap.keySet()) {
-            double absoluteVal = calculateRoundVal(c, brightness);
-            if (absoluteVal < minValue) {
-                minValue = absoluteVal;
-                minChar = c;
-            } else if (absoluteVal == minValue) {
-                if ((int) c < (int) minChar) {
-                    minChar = c;
-                }
-            }
-        }
-        return minChar;
+        return this.snapshot.getCharByImageBrightness(brightness);
+    }
+
+    /**
+     * Get the current snapshot of the charset. The snapshot does not change when the matcher is edited
+     * afterwards.
+     *
+     * @return the current snapshot.
+     */
+    public CharMatcherSnapshot snapshot() {
+        return this.snapshot;
     }
 
     /**
@@ -165,9 +118,10 @@ public class SubImgCharMatcher {
      *
      * @param c the character to add.
      */
-    public void addChar(char c) {
-        this.charset.add(c);
-        updateBrightnessMap();
+    public synchronized void addChar(char c) {
+        if (this.charset.add(c)) {
+            publishSnapshot();
+        }
     }
 
     /**
@@ -175,18 +129,19 @@ public class SubImgCharMatcher {
      *
      * @param c the character to remove.
      */
-    public void removeChar(char c) {
-        this.charset.remove(c);
-        updateBrightnessMap();
+    public synchronized void removeChar(char c) {
+        if (this.charset.remove(c)) {
+            publishSnapshot();
+        }
     }
 
     /**
-     * Get the charset.
+     * Get the charset of the current snapshot.
      *
-     * @return the charset.
+     * @return an unmodifiable sorted view of the charset.
      */
-    public TreeSet<Character> getCharset() {
-        return this.charset;
+    public SortedSet<Character> getCharset() {
+        return this.snapshot.getCharset();
     }
 
     /**
@@ -194,27 +149,8 @@ public class SubImgCharMatcher {
      *
      * @param round the round method.
      */
-    public void setRoundSubMatcher(String round) {
+    public synchronized void setRoundSubMatcher(RoundMode round) {
         this.round = round;
-    }
-
-    /**
-     * Calculate the round value according to the round method.
-     *
-     * @param c the character to calculate the round value for.
-     * @param brightness the brightness value to calculate the round value for.
-     * @return the round value.
-     */
-    private double calculateRoundVal(char c, double brightness) {
-        if (this.round.equals("abs")) {
-            return Math.abs(charBrightnessMap.get(c) - brightness);
-        } else if (this.round.equals("up")) {
-            Double charBrightness = charBrightnessMap.get(c);
-            return charBrightness >= brightness ? charBrightness - brightness : Double.MAX_VALUE;
-        } else //this.round.equals("down")
-        {
-            Double charBrightness = charBrightnessMap.get(c);
-            return charBrightness <= brightness ? brightness - charBrightness : Double.MAX_VALUE;
-        }
+        this.snapshot = this.snapshot.withRound(round);
     }
 }
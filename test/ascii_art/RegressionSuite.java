@@ -0,0 +1,505 @@
+package ascii_art;
+
+import ascii_art.exceptions.OutOfImageSizeException;
+import ascii_output.BinaryAsciiOutput;
+import ascii_output.BinaryAsciiReader;
+import image.Image;
+import image.ImageSource;
+import image.SubImages;
+import image_char_matching.BrailleTable;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An end-to-end regression check of the shell. Renders the example images and two large synthetic images
+ * through the commands of the {@link Shell}, at several resolutions, charsets and rounding methods and in
+ * braille mode, and compares every frame with the golden frame recorded for it, char by char. The braille
+ * frames of line.jpg, a dark line on white, are also checked to raise the dots of the line and not of the
+ * white ground, whatever the golden frames hold. Every render is also measured:
+ * the bytes allocated by the rendering thread and the wall time must stay within a tolerance of the
+ * recorded baseline.
+ * <p>
+ * The wall times are relative to a calibration render measured in the same run: the brightness of the
+ * tiles of the noise image computed pixel by pixel, the way the baseline program computes every tile. The
+ * time limits of a case scale with the ratio of the calibration to the recorded one, so a slower or a
+ * faster machine than the recording one moves the calibration and the limits together.
+ * <p>
+ * Every case runs {@link #RUNS} times, each time in a new shell over the decoded image with its tile cache
+ * and brightness pyramid cleared, so every run is a cold render of its own case whatever ran before it.
+ * The fastest run and the median allocation are compared with the baseline, since the slower runs mostly
+ * measure the compiler and the collector sharing the machine, and every run must give the same frame. A
+ * case slower than its baseline is run again before it fails, so only a case that stays slow fails.
+ * <p>
+ * Compile with the src root and run from the project root: "java ascii_art.RegressionSuite" checks, and
+ * exits with 1 on any mismatch, and "java ascii_art.RegressionSuite record" records the golden frames and
+ * the baseline again from this tree, after an intended change of the output. The golden frames of the
+ * charset cases were rendered by the baseline program, before any of the fast paths, so a match shows
+ * the fast paths keep its output; the braille mode is newer, and its frames come from this tree.
+ */
+public class RegressionSuite {
+    private static final String EXAMPLES_DIR = "src/examples";
+    private static final String GOLDEN_DIR = "test/golden";
+    private static final String FRAMES_FILE = "frames.asf";
+    private static final String BASELINE_FILE = "baseline.txt";
+    private static final String[] EXAMPLES = {"board.jpeg", "cat.jpeg", "line.jpg"};
+    private static final int[] RESOLUTIONS = {16, 64, 256};
+    private static final String BRAILLE = "braille";
+    private static final String WHITE_GROUND_IMAGE = "line.jpg";
+    private static final String[] ROUNDS = {"abs", "up", "down"};
+    private static final int DEFAULT_RES = 2;
+    private static final int RUNS = 5;
+    private static final double ALLOCATION_TOLERANCE = 1.25;
+    private static final long ALLOCATION_SLACK_BYTES = 256 * 1024;
+    private static final double TIME_TOLERANCE = 2.0;
+    private static final long TIME_SLACK_MICROS = 1000;
+    private static final String CALIBRATION = "calibration";
+    private static final int CALIBRATION_RES = 64;
+    private static final int SYNTHETIC_SEED = 38;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final PrintStream console;
+    private final PrintStream discard;
+    private double calibrationSink;
+
+    /**
+     * Constructor for the suite.
+     */
+    private RegressionSuite() {
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.threads.setThreadAllocatedMemoryEnabled(true);
+        this.console = System.out;
+        this.discard = new PrintStream(OutputStream.nullOutputStream());
+        this.calibrationSink = 0;
+    }
+
+    /**
+     * The result of one render of the suite.
+     */
+    private static class Result {
+        private final String image;
+        private final String charset;
+        private final String round;
+        private final int resolution;
+        private final String name;
+        private final char[][] frame;
+        private final long allocatedBytes;
+        private final long micros;
+
+        /**
+         * Constructor for a result.
+         * @param image the image file.
+         * @param charset digits, or all for every printable char.
+         * @param round the rounding method.
+         * @param resolution the resolution.
+         * @param name the name of the case: the image, resolution, rounding method and charset.
+         * @param frame the chars of the render.
+         * @param allocatedBytes the bytes allocated by the render, the median of the runs.
+         * @param micros the wall time of the render in microseconds, the fastest of the runs.
+         */
+        Result(String image, String charset, String round, int resolution, String name, char[][] frame,
+               long allocatedBytes, long micros) {
+            this.image = image;
+            this.charset = charset;
+            this.round = round;
+            this.resolution = resolution;
+            this.name = name;
+            this.frame = frame;
+            this.allocatedBytes = allocatedBytes;
+            this.micros = micros;
+        }
+    }
+
+    /**
+     * Runs the suite.
+     * @param args "record" to record the golden frames and the baseline, nothing to check against them.
+     */
+    public static void main(String[] args) {
+        boolean record = args.length == 1 && args[0].equalsIgnoreCase("record");
+        if (args.length > 1 || (args.length == 1 && !record)) {
+            System.out.println("Usage: RegressionSuite [record]");
+            System.exit(2);
+        }
+        RegressionSuite suite = new RegressionSuite();
+        try {
+            List<String> images = new ArrayList<>();
+            for (String example : EXAMPLES) {
+                images.add(Path.of(EXAMPLES_DIR, example).toString());
+            }
+            List<String> synthetic = writeSyntheticImages();
+            images.addAll(synthetic);
+            // one pass to load the classes and compile the hot loops, so the measured pass is steady
+            suite.renderAll(images, RUNS);
+            String calibrationImage = synthetic.get(synthetic.size() - 1);
+            long calibration = suite.calibrate(calibrationImage);
+            List<Result> results = suite.renderAll(images, RUNS);
+            calibration = Math.min(calibration, suite.calibrate(calibrationImage));
+            if (record) {
+                suite.record(results, calibration);
+                System.out.println("Recorded " + results.size() + " frames.");
+            } else {
+                int failures = suite.check(results, calibration);
+                System.out.println(failures == 0 ? "All " + results.size() + " renders match."
+                        : failures + " of " + results.size() + " renders failed.");
+                System.exit(failures == 0 ? 0 : 1);
+            }
+        } catch (IOException | OutOfImageSizeException e) {
+            System.out.println("Did not run the suite: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * This function renders every case of every image. Every image is decoded once, outside of the
+     * measured renders.
+     * @param images the image files.
+     * @param runs the number of runs of every case.
+     * @return the results, in order.
+     * @throws IOException if an image could not be read, a command failed or the runs of a case differ.
+     * @throws OutOfImageSizeException if a resolution exceeds the boundaries.
+     */
+    private List<Result> renderAll(List<String> images, int runs) throws IOException, OutOfImageSizeException {
+        List<Result> results = new ArrayList<>();
+        for (String image : images) {
+            try (ImageSource source = new ImageSource(image)) {
+                source.getUniformityIndex();
+                for (String charset : new String[]{"digits", "all"}) {
+                    for (String round : ROUNDS) {
+                        for (int target : RESOLUTIONS) {
+                            if (target <= source.getPaddedWidth()) {
+                                results.add(renderCase(source, charset, round, target, runs));
+                            }
+                        }
+                    }
+                }
+                for (int target : RESOLUTIONS) {
+                    if (target <= source.getPaddedWidth() / BrailleTable.CELL_COLS) {
+                        results.add(renderCase(source, BRAILLE, "abs", target, runs));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * This function renders one case several times, each time in a new shell with the caches of the image
+     * cleared, and takes the fastest time and the median allocation of the runs.
+     * @param source the decoded image.
+     * @param charset digits, all for every printable char, or braille for the braille mode.
+     * @param round the rounding method.
+     * @param resolution the resolution, a power of two.
+     * @param runs the number of runs.
+     * @return the result.
+     * @throws IOException if a command failed or the runs gave different frames.
+     * @throws OutOfImageSizeException if the resolution exceeds the boundaries.
+     */
+    private Result renderCase(ImageSource source, String charset, String round, int resolution, int runs)
+            throws IOException, OutOfImageSizeException {
+        String name = new File(source.getFilename()).getName() + " res=" + resolution + " round=" + round
+                + " charset=" + charset;
+        char[][] firstFrame = null;
+        long[] allocatedBytes = new long[runs];
+        long[] micros = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            source.getTileCache().clear();
+            source.getBrightnessPyramid().clear();
+            Shell shell = new Shell();
+            shell.open(source);
+            char[][][] frame = new char[1][][];
+            shell.setAsciiOutput(chars -> frame[0] = chars);
+            if (charset.equals("all")) {
+                execute(shell, "add all");
+            } else if (charset.equals(BRAILLE)) {
+                execute(shell, "mode braille");
+            }
+            execute(shell, "round " + round);
+            changeResolution(shell, resolution);
+
+            long thread = Thread.currentThread().getId();
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            execute(shell, "asciiArt");
+            micros[run] = (System.nanoTime() - start) / 1000;
+            allocatedBytes[run] = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            if (frame[0] == null) {
+                throw new IOException("No frame for " + name);
+            }
+            if (firstFrame == null) {
+                firstFrame = frame[0];
+            } else if (!Arrays.deepEquals(firstFrame, frame[0])) {
+                throw new IOException("The runs of " + name + " gave different frames");
+            }
+        }
+        return new Result(source.getFilename(), charset, round, resolution, name, firstFrame,
+                median(allocatedBytes), Arrays.stream(micros).min().getAsLong());
+    }
+
+    /**
+     * This function measures the calibration render: the brightness of every tile of an image at a fixed
+     * resolution, computed pixel by pixel without the caches and fast paths of the renderer, so it does
+     * not move with the changes the suite measures.
+     * @param image the image file.
+     * @return the fastest time of the runs, in microseconds.
+     * @throws IOException if the image could not be read.
+     */
+    private long calibrate(String image) throws IOException {
+        long fastest = Long.MAX_VALUE;
+        try (ImageSource source = new ImageSource(image)) {
+            Image padded = source.getPaddedImage();
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                SubImages subImages = new SubImages(CALIBRATION_RES, padded);
+                subImages.setSubImage();
+                for (Image[] row : subImages.getSubImages()) {
+                    for (Image tile : row) {
+                        calibrationSink += subImages.calculateBrightnessImage(tile);
+                    }
+                }
+                fastest = Math.min(fastest, (System.nanoTime() - start) / 1000);
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * This function renders the case of a result again, on a newly decoded image.
+     * @param result the result.
+     * @return the fastest time of the new runs and of the result, in microseconds.
+     * @throws IOException if the image could not be read or a command failed.
+     * @throws OutOfImageSizeException if the resolution exceeds the boundaries.
+     */
+    private long measureAgain(Result result) throws IOException, OutOfImageSizeException {
+        try (ImageSource source = new ImageSource(result.image)) {
+            source.getUniformityIndex();
+            return Math.min(result.micros,
+                    renderCase(source, result.charset, result.round, result.resolution, RUNS).micros);
+        }
+    }
+
+    /**
+     * This function doubles or halves the resolution of a new shell until it reaches a target, the way a
+     * user would.
+     * @param shell the shell, at the default resolution.
+     * @param target the wanted resolution, a power of two.
+     * @throws IOException if a command failed.
+     * @throws OutOfImageSizeException if the resolution exceeds the boundaries.
+     */
+    private void changeResolution(Shell shell, int target) throws IOException, OutOfImageSizeException {
+        for (int resolution = DEFAULT_RES; resolution < target; resolution *= 2) {
+            execute(shell, "res up");
+        }
+        for (int resolution = DEFAULT_RES; resolution > target; resolution /= 2) {
+            execute(shell, "res down");
+        }
+    }
+
+    /**
+     * This function returns the median of some measures.
+     * @param values the measures, which are sorted in place.
+     * @return the middle measure.
+     */
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    /**
+     * This function runs a command of a shell without printing its messages.
+     * @param shell the shell.
+     * @param command the command.
+     * @throws IOException if the command failed.
+     * @throws OutOfImageSizeException if the resolution exceeds the boundaries.
+     */
+    private void execute(Shell shell, String command) throws IOException, OutOfImageSizeException {
+        System.setOut(discard);
+        try {
+            shell.execute(command);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * This function writes the golden frames and the baseline of the results.
+     * @param results the results.
+     * @param calibration the time of the calibration render in microseconds.
+     * @throws IOException if the files could not be written.
+     */
+    private void record(List<Result> results, long calibration) throws IOException {
+        Path dir = Path.of(GOLDEN_DIR);
+        Files.createDirectories(dir);
+        Path frames = dir.resolve(FRAMES_FILE);
+        Files.deleteIfExists(frames);
+        String[] name = new String[1];
+        BinaryAsciiOutput output = new BinaryAsciiOutput(frames.toString(), true, () -> name[0]);
+        List<String> baseline = new ArrayList<>();
+        baseline.add(CALIBRATION + " " + calibration);
+        for (Result result : results) {
+            name[0] = result.name;
+            output.out(result.frame);
+            baseline.add(result.allocatedBytes + " " + result.micros + " " + result.name);
+        }
+        Files.write(dir.resolve(BASELINE_FILE), baseline, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This function compares the results with the golden frames and the baseline, and prints every
+     * failure. The recorded times are scaled by the calibration of this run over the recorded one.
+     * @param results the results.
+     * @param calibration the time of the calibration render in microseconds.
+     * @return the number of failed renders.
+     * @throws IOException if the golden files or an image could not be read, or the baseline has no
+     * calibration.
+     * @throws OutOfImageSizeException if the resolution of a case exceeds the boundaries.
+     */
+    private int check(List<Result> results, long calibration) throws IOException, OutOfImageSizeException {
+        Map<String, long[]> baseline = new HashMap<>();
+        long recordedCalibration = 0;
+        for (String line : Files.readAllLines(Path.of(GOLDEN_DIR, BASELINE_FILE), StandardCharsets.UTF_8)) {
+            String[] words = line.split(" ", 3);
+            if (words.length == 2 && words[0].equals(CALIBRATION)) {
+                recordedCalibration = Long.parseLong(words[1]);
+            } else if (words.length == 3) {
+                baseline.put(words[2], new long[]{Long.parseLong(words[0]), Long.parseLong(words[1])});
+            }
+        }
+        if (recordedCalibration <= 0) {
+            throw new IOException("No calibration in the baseline");
+        }
+        double scale = (double) calibration / recordedCalibration;
+        System.out.printf("Calibration %d us, recorded %d us: time limits scaled by %.2f.%n", calibration,
+                recordedCalibration, scale);
+        int failures = 0;
+        try (BinaryAsciiReader reader = new BinaryAsciiReader(Path.of(GOLDEN_DIR, FRAMES_FILE).toString())) {
+            Map<String, Integer> golden = new HashMap<>();
+            for (int i = 0; i < reader.getFrameCount(); i++) {
+                golden.put(reader.getParameters(i), i);
+            }
+            for (Result result : results) {
+                String failure = null;
+                long[] expected = baseline.get(result.name);
+                if (!hasInkOnWhite(result)) {
+                    failure = "braille dots on the white ground";
+                } else if (!golden.containsKey(result.name) || expected == null) {
+                    failure = "not recorded";
+                } else if (!Arrays.deepEquals(reader.readFrame(golden.get(result.name)), result.frame)) {
+                    failure = "frame differs from the golden frame";
+                } else if (result.allocatedBytes
+                        > expected[0] * ALLOCATION_TOLERANCE + ALLOCATION_SLACK_BYTES) {
+                    failure = "allocated " + result.allocatedBytes + " bytes, baseline " + expected[0];
+                } else if (result.micros > timeLimit(expected[1], scale)) {
+                    long micros = measureAgain(result);
+                    if (micros > timeLimit(expected[1], scale)) {
+                        failure = "took " + micros + " us, baseline " + expected[1] + " us scaled by "
+                                + String.format("%.2f", scale);
+                    }
+                }
+                if (failure != null) {
+                    failures++;
+                    System.out.println("FAIL " + result.name + ": " + failure);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * This function returns the longest time a case may take on this machine.
+     * @param recordedMicros the recorded time of the case in microseconds.
+     * @param scale the calibration of this run over the recorded one.
+     * @return the limit in microseconds.
+     */
+    private static double timeLimit(long recordedMicros, double scale) {
+        return (recordedMicros * TIME_TOLERANCE + TIME_SLACK_MICROS) * scale;
+    }
+
+    /**
+     * This function checks that a braille frame of the image with a white ground raises the dots of the dark
+     * line and leaves the ground empty, like the chars of the charset are ink on a light ground.
+     * @param result the result.
+     * @return false if the result is such a frame with a raised top left cell or without any dot.
+     */
+    private static boolean hasInkOnWhite(Result result) {
+        if (!result.charset.equals(BRAILLE) || !new File(result.image).getName().equals(WHITE_GROUND_IMAGE)) {
+            return true;
+        }
+        char empty = BrailleTable.getChar(0);
+        if (result.frame[0][0] != empty) {
+            return false;
+        }
+        for (char[] row : result.frame) {
+            for (char c : row) {
+                if (c != empty) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This function draws the synthetic images in a temporary directory: a smooth gradient with shapes,
+     * which is mostly uniform tiles, and seeded noise, which has no uniform tile at all.
+     * @return the image files.
+     * @throws IOException if the images could not be written.
+     */
+    private static List<String> writeSyntheticImages() throws IOException {
+        Path dir = Files.createTempDirectory("ascii-regression");
+        dir.toFile().deleteOnExit();
+
+        BufferedImage gradient = new BufferedImage(2048, 1536, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = gradient.createGraphics();
+        for (int x = 0; x < gradient.getWidth(); x++) {
+            int grey = x * 255 / (gradient.getWidth() - 1);
+            g.setColor(new Color(grey, grey, grey));
+            g.fillRect(x, 0, 1, gradient.getHeight());
+        }
+        g.setColor(Color.BLACK);
+        g.fillOval(300, 300, 600, 600);
+        g.setColor(Color.WHITE);
+        g.fillRect(1200, 200, 500, 1000);
+        g.dispose();
+
+        BufferedImage noise = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SYNTHETIC_SEED);
+        for (int y = 0; y < noise.getHeight(); y++) {
+            for (int x = 0; x < noise.getWidth(); x++) {
+                noise.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+
+        return List.of(writeImage(dir, "gradient.png", gradient), writeImage(dir, "noise.png", noise));
+    }
+
+    /**
+     * This function writes an image as a png file that is deleted when the suite ends.
+     * @param dir the directory.
+     * @param name the name of the file.
+     * @param image the image.
+     * @return the path of the file.
+     * @throws IOException if the file could not be written.
+     */
+    private static String writeImage(Path dir, String name, BufferedImage image) throws IOException {
+        File file = dir.resolve(name).toFile();
+        ImageIO.write(image, "png", file);
+        file.deleteOnExit();
+        return file.getPath();
+    }
+}